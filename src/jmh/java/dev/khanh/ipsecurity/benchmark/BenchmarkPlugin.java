@@ -0,0 +1,87 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import com.github.Anon8281.universalScheduler.scheduling.schedulers.TaskScheduler;
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.util.CachedTimeFormatter;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Stand-in for the running plugin, so the plugin classes can be benchmarked without a server.
+ * The mocks are stub-only, they do not record the millions of calls a benchmark makes.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class BenchmarkPlugin {
+    private BenchmarkPlugin() {
+    }
+
+    /**
+     * Creates mocked settings with the default date format.
+     *
+     * @return The settings mock
+     */
+    public static Settings settings() {
+        Settings settings = Mockito.mock(Settings.class, Mockito.withSettings().stubOnly());
+        when(settings.getTimeFormatter()).thenReturn(
+                new CachedTimeFormatter("dd/MM/yyyy HH:mm:ss", ZoneId.systemDefault(), 1));
+        when(settings.getSqliteReadConnections()).thenReturn(4);
+        return settings;
+    }
+
+    /**
+     * Creates a mocked plugin and makes it the plugin instance.
+     *
+     * @param dataFolder The data folder
+     * @param settings   The settings
+     * @return The plugin mock
+     */
+    public static IPSecurityPlugin create(File dataFolder, Settings settings) {
+        IPSecurityPlugin plugin = Mockito.mock(IPSecurityPlugin.class, Mockito.withSettings().stubOnly());
+
+        Logger logger = Logger.getLogger("IPSecurity");
+        logger.setLevel(Level.WARNING);
+
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getSettings()).thenReturn(settings);
+        when(plugin.getLogger()).thenReturn(logger);
+        when(plugin.getScheduler()).thenReturn(Mockito.mock(TaskScheduler.class, Mockito.withSettings().stubOnly()));
+
+        try {
+            Field instance = IPSecurityPlugin.class.getDeclaredField("instance");
+            instance.setAccessible(true);
+            instance.set(null, plugin);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to set the plugin instance", e);
+        }
+
+        return plugin;
+    }
+
+    /**
+     * Deletes a directory created for a benchmark.
+     *
+     * @param directory The directory
+     */
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
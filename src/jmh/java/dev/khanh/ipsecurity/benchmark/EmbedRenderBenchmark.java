@@ -0,0 +1,53 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import dev.khanh.ipsecurity.util.EmbedTemplate;
+import dev.khanh.ipsecurity.util.MessageEmbedUtil;
+import dev.khanh.ipsecurity.util.Placeholders;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placeholder rendering of a notification embed: the ad-hoc {@link MessageEmbedUtil#parsePlaceholder}
+ * path, which compiles on every call, against a template compiled once as messages.yml embeds are.
+ *
+ * @author KhanhHuynh1402
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbedRenderBenchmark {
+    private MessageEmbed embed;
+    private EmbedTemplate template;
+
+    @Setup
+    public void setup() {
+        BenchmarkPlugin.create(new File("."), BenchmarkPlugin.settings());
+
+        embed = new EmbedBuilder()
+                .setTitle("Verification failed")
+                .setDescription("Player **%player%** tried to join from `%ip%` at %time%. "
+                        + "Use the button below to add this IP if it belongs to %player%.")
+                .setColor(Color.RED)
+                .setFooter("IPSecurity - %time%")
+                .build();
+        template = EmbedTemplate.compile(embed);
+    }
+
+    @Benchmark
+    public MessageEmbed parsePlaceholder() {
+        return MessageEmbedUtil.parsePlaceholder(embed, "KhanhHuynh", "192.168.1.20");
+    }
+
+    @Benchmark
+    public MessageEmbed renderTemplate() {
+        return template.render(Placeholders.of("KhanhHuynh", "192.168.1.20"));
+    }
+}
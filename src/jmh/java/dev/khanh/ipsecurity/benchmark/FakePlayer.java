@@ -0,0 +1,62 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import org.bukkit.GameMode;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Minimal {@link Player} answering only what the security checks ask for.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class FakePlayer {
+    private FakePlayer() {
+    }
+
+    /**
+     * Creates a fake player.
+     *
+     * @param name        The player name
+     * @param ip          The IP the player connects from
+     * @param op          Whether the player is an operator
+     * @param gameMode    The game mode
+     * @param permissions The permissions granted to the player
+     * @return The player
+     */
+    public static Player create(String name, String ip, boolean op, GameMode gameMode, Set<String> permissions) {
+        UUID uniqueId = UUID.nameUUIDFromBytes(name.getBytes());
+        InetSocketAddress address = new InetSocketAddress(ip, 25565);
+
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName":
+                            return name;
+                        case "getUniqueId":
+                            return uniqueId;
+                        case "getAddress":
+                            return address;
+                        case "isOp":
+                            return op;
+                        case "isOnline":
+                            return true;
+                        case "getGameMode":
+                            return gameMode;
+                        case "hasPermission":
+                            return args[0] instanceof String && permissions.contains(args[0]);
+                        case "hashCode":
+                            return uniqueId.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "FakePlayer{" + name + "}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,51 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import dev.khanh.ipsecurity.data.DataStorage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link DataStorage}, used to measure the checks without any storage cost.
+ *
+ * @author KhanhHuynh1402
+ */
+public class MapDataStorage implements DataStorage {
+    private final Map<String, String> data = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
+        data.put(playerName, ip);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerIP(String playerName) {
+        return CompletableFuture.completedFuture(data.get(playerName));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        Map<String, String> result = new HashMap<>();
+        for (String playerName : playerNames) {
+            String ip = data.get(playerName);
+            if (ip != null) {
+                result.put(playerName, ip);
+            }
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
+        return CompletableFuture.completedFuture(data.remove(playerName) != null);
+    }
+
+    @Override
+    public void shutdown() {
+        data.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.data.*;
+import dev.khanh.ipsecurity.file.Settings;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Lookup and write throughput of the storage backends, waiting for each operation to complete.
+ * MySQL runs against an embedded MariaDB started for the trial.
+ * YAML writes complete on the debounced journal flush, so their throughput reflects the flush delay.
+ *
+ * @author KhanhHuynh1402
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int PLAYERS = 1000;
+
+    @Param({"YAML", "SQLITE", "MYSQL"})
+    public String type;
+
+    private Path dataFolder;
+    private StorageExecutor executor;
+    private DB mariaDB;
+    private DataStorage storage;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dataFolder = Files.createTempDirectory("ipsecurity-bench");
+        executor = new StorageExecutor(4, 1000, true, false);
+
+        Settings settings = BenchmarkPlugin.settings();
+        IPSecurityPlugin plugin = BenchmarkPlugin.create(dataFolder.toFile(), settings);
+        when(plugin.getStorageExecutor()).thenReturn(executor);
+
+        switch (type) {
+            case "YAML":
+                storage = new YamlStorage(plugin);
+                break;
+            case "SQLITE":
+                storage = new SQLiteStorage(plugin);
+                break;
+            case "MYSQL":
+                mariaDB = DB.newEmbeddedDB(DBConfigurationBuilder.newBuilder()
+                        .setPort(0)
+                        .setDataDir(dataFolder.resolve("mariadb").toString())
+                        .build());
+                mariaDB.start();
+                mariaDB.createDB("ipsecurity");
+
+                YamlConfiguration config = new YamlConfiguration();
+                config.set("storage.mysql-properties.host", "localhost");
+                config.set("storage.mysql-properties.port", mariaDB.getConfiguration().getPort());
+                config.set("storage.mysql-properties.database", "ipsecurity");
+                config.set("storage.mysql-properties.username", "root");
+                config.set("storage.mysql-properties.password", "");
+                config.set("storage.mysql-properties.table", "ipsecurity");
+                config.set("storage.mysql-properties.parameters", "?useSSL=false&allowPublicKeyRetrieval=true");
+                config.set("storage.mysql-properties.pool.maximum-pool-size", 8);
+                config.set("storage.mysql-properties.pool.minimum-idle", 8);
+                config.set("storage.mysql-properties.pool.connection-timeout", 5000);
+                when(settings.getConfig()).thenReturn(config);
+
+                storage = new MySQLStorage(plugin);
+                break;
+            default:
+                throw new IllegalArgumentException(type);
+        }
+
+        for (int i = 0; i < PLAYERS; i++) {
+            storage.setPlayerIP("Player" + i, "10.0." + (i / 256) + "." + (i % 256)).join();
+        }
+
+        if (mariaDB != null) {
+            verifyBatchLookupCase();
+        }
+    }
+
+    /**
+     * MySQL compares names case-insensitively, so a batch lookup has to find what a single lookup finds,
+     * keyed by the name as it was requested.
+     */
+    private void verifyBatchLookupCase() {
+        List<String> names = Arrays.asList("PLAYER1", "player2", "Player3");
+        Map<String, String> ips = storage.getPlayerIPs(names).join();
+
+        for (String name : names) {
+            String expected = storage.getPlayerIP(name).join();
+            if (expected == null || !expected.equals(ips.get(name))) {
+                throw new IllegalStateException("Batch lookup of " + name + " returned " + ips.get(name)
+                        + " but a single lookup returned " + expected);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+        if (mariaDB != null) {
+            mariaDB.stop();
+        }
+        BenchmarkPlugin.delete(dataFolder);
+    }
+
+    @Benchmark
+    public String getPlayerIP() {
+        return storage.getPlayerIP("Player" + ThreadLocalRandom.current().nextInt(PLAYERS)).join();
+    }
+
+    @Benchmark
+    public void setPlayerIP() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        storage.setPlayerIP("Player" + random.nextInt(PLAYERS), "10.2." + random.nextInt(256) + "." + random.nextInt(256)).join();
+    }
+}
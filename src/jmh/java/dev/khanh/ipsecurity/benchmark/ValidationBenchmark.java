@@ -0,0 +1,93 @@
+package dev.khanh.ipsecurity.benchmark;
+
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.data.VersionedDataStorage;
+import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.task.PlayerSecurityChecker;
+import org.bukkit.GameMode;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Cost of {@link PlayerSecurityChecker#isValidPlayer(Player)} over a simulated player list,
+ * which is what one sweep pays per online player. Storage is in-memory so only the checks are measured.
+ * {@code privilegeFingerprint} is what the sweep pays per player once their permissions are cached.
+ *
+ * @author KhanhHuynh1402
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+    private static final List<String> CHECKED_PERMISSIONS = Arrays.asList(
+            "ipsecurity.admin", "luckperms.*", "essentials.gamemode", "worldedit.*", "minecraft.command.op");
+
+    /**
+     * OP: only operators are checked. OP_GAMEMODE: operators and creative players.
+     * ALL: operators, creative players and five permissions.
+     */
+    @Param({"OP", "OP_GAMEMODE", "ALL"})
+    public String rules;
+
+    @Param({"100", "1000"})
+    public int playerCount;
+
+    private PlayerSecurityChecker checker;
+    private List<Player> players;
+
+    @Setup
+    public void setup() {
+        Settings settings = BenchmarkPlugin.settings();
+        when(settings.isCheckOp()).thenReturn(true);
+        when(settings.isCheckGamemode()).thenReturn(!rules.equals("OP"));
+        when(settings.getCheckPermissions()).thenReturn(
+                rules.equals("ALL") ? CHECKED_PERMISSIONS : Collections.emptyList());
+
+        IPSecurityPlugin plugin = BenchmarkPlugin.create(new File("."), settings);
+        VersionedDataStorage storage = new VersionedDataStorage(new MapDataStorage());
+        when(plugin.getDataStorage()).thenReturn(storage);
+        when(plugin.getVersionedStorage()).thenReturn(storage);
+
+        players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            String name = "Player" + i;
+            String ip = "10.0." + (i / 256) + "." + (i % 256);
+
+            // Roughly one in ten is staff, and half of the staff has a stale stored IP
+            boolean op = i % 10 == 0;
+            GameMode gameMode = i % 7 == 0 ? GameMode.CREATIVE : GameMode.SURVIVAL;
+            Set<String> permissions = i % 5 == 0
+                    ? Collections.singleton(CHECKED_PERMISSIONS.get(i % CHECKED_PERMISSIONS.size()))
+                    : Collections.emptySet();
+
+            players.add(FakePlayer.create(name, ip, op, gameMode, permissions));
+            storage.setPlayerIP(name, i % 2 == 0 ? ip : "10.1.0.1");
+        }
+
+        checker = new PlayerSecurityChecker(plugin);
+    }
+
+    @Benchmark
+    public void isValidPlayer(Blackhole blackhole) {
+        for (Player player : players) {
+            blackhole.consume(checker.isValidPlayer(player));
+        }
+    }
+
+    @Benchmark
+    public void privilegeFingerprint(Blackhole blackhole) {
+        for (Player player : players) {
+            blackhole.consume(checker.getPrivilegeFingerprint(player));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package dev.khanh.ipsecurity.ip;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link IPAddressParser} for accepted and rejected input, and of matching a parsed
+ * address against an {@link IPAllowlist}. Run with {@code -prof gc} to confirm parsing allocates nothing.
+ *
+ * @author KhanhHuynh1402
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IPParserBenchmark {
+    @Param({"192.168.1.20", "255.255.255.255", "256.1.1.1", "not-an-ip", "2001:db8::1", "::ffff:10.0.0.1"})
+    public String input;
+
+    private final IPAddressParser parser = new IPAddressParser();
+    private IPAllowlist allowlist;
+
+    @Setup
+    public void setup() {
+        allowlist = IPAllowlist.parse("203.0.113.7,198.51.100.0/24,10.0.0.0/8,2001:db8::/48,2001:db8:1::1");
+    }
+
+    @Benchmark
+    public boolean parse() {
+        return parser.parse(input);
+    }
+
+    @Benchmark
+    public boolean parseAndMatch() {
+        return parser.parse(input) && allowlist.contains(parser.getHigh(), parser.getLow());
+    }
+}
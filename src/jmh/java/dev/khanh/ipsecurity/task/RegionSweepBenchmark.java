@@ -0,0 +1,200 @@
+package dev.khanh.ipsecurity.task;
+
+import com.github.Anon8281.universalScheduler.scheduling.schedulers.TaskScheduler;
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.benchmark.BenchmarkPlugin;
+import dev.khanh.ipsecurity.benchmark.FakePlayer;
+import dev.khanh.ipsecurity.benchmark.MapDataStorage;
+import dev.khanh.ipsecurity.bot.DiscordBot;
+import dev.khanh.ipsecurity.data.VersionedDataStorage;
+import dev.khanh.ipsecurity.file.Messages;
+import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.metrics.PluginMetrics;
+import org.bukkit.GameMode;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the region-aware sweep of {@link PlayerSecurityChecker} over many simulated Folia regions.
+ * Each region is a single thread owning a share of the players, and the entity scheduler runs a task
+ * on the region owning the entity. Every sweep verifies that player state was only read on the owning
+ * region and that exactly the privileged players with a stale stored IP were kicked.
+ *
+ * @author KhanhHuynh1402
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionSweepBenchmark {
+    private static final List<String> CHECKED_PERMISSIONS = Arrays.asList(
+            "ipsecurity.admin", "luckperms.*", "essentials.gamemode", "worldedit.*", "minecraft.command.op");
+    private static final Set<String> STATE_METHODS = new HashSet<>(Arrays.asList("isOp", "getGameMode", "hasPermission"));
+    private static final ThreadLocal<Integer> CURRENT_REGION = new ThreadLocal<>();
+
+    @Param({"1", "4", "16", "64"})
+    public int regionCount;
+
+    @Param({"1000"})
+    public int playerCount;
+
+    private ExecutorService[] regions;
+    private final Map<UUID, Integer> owners = new HashMap<>();
+    private final AtomicInteger kicks = new AtomicInteger();
+    private final AtomicInteger foreignReads = new AtomicInteger();
+    private int expectedKicks;
+
+    private PlayerSecurityChecker checker;
+    private List<Player> players;
+
+    @Setup
+    public void setup() {
+        regions = new ExecutorService[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            int region = i;
+            regions[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    CURRENT_REGION.set(region);
+                    runnable.run();
+                }, "Region-" + region);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Settings settings = BenchmarkPlugin.settings();
+        when(settings.isCheckOp()).thenReturn(true);
+        when(settings.isCheckGamemode()).thenReturn(true);
+        when(settings.getCheckPermissions()).thenReturn(CHECKED_PERMISSIONS);
+
+        IPSecurityPlugin plugin = BenchmarkPlugin.create(new File("."), settings);
+        VersionedDataStorage storage = new VersionedDataStorage(new MapDataStorage());
+        when(plugin.getDataStorage()).thenReturn(storage);
+        when(plugin.getVersionedStorage()).thenReturn(storage);
+        when(plugin.getMetrics()).thenReturn(new PluginMetrics());
+        when(plugin.getDiscordBot()).thenReturn(Mockito.mock(DiscordBot.class, Mockito.withSettings().stubOnly()));
+
+        Messages messages = Mockito.mock(Messages.class, Mockito.withSettings().stubOnly());
+        when(messages.getKickMessage()).thenReturn("&cKicked");
+        when(plugin.getMessages()).thenReturn(messages);
+
+        // The entity scheduler of Folia: the task runs on the region owning the entity
+        TaskScheduler scheduler = Mockito.mock(TaskScheduler.class, Mockito.withSettings().stubOnly());
+        doAnswer(invocation -> {
+            Entity entity = invocation.getArgument(0);
+            Runnable task = invocation.getArgument(1);
+            regions[owners.get(entity.getUniqueId())].execute(task);
+            return null;
+        }).when(scheduler).runTask(any(Entity.class), any(Runnable.class));
+        when(plugin.getScheduler()).thenReturn(scheduler);
+
+        players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            String name = "Player" + i;
+            String ip = "10.0." + (i / 256) + "." + (i % 256);
+
+            // Roughly one in ten is staff, and half of the staff has a stale stored IP
+            boolean op = i % 10 == 0;
+            GameMode gameMode = i % 7 == 0 ? GameMode.CREATIVE : GameMode.SURVIVAL;
+            Set<String> permissions = i % 5 == 0
+                    ? Collections.singleton(CHECKED_PERMISSIONS.get(i % CHECKED_PERMISSIONS.size()))
+                    : Collections.emptySet();
+            boolean stale = i % 2 != 0;
+
+            Player player = createRegionPlayer(FakePlayer.create(name, ip, op, gameMode, permissions), i % regionCount);
+            players.add(player);
+            storage.setPlayerIP(name, stale ? "10.1.0.1" : ip);
+
+            if (stale && (op || gameMode == GameMode.CREATIVE || !permissions.isEmpty())) {
+                expectedKicks++;
+            }
+        }
+
+        checker = new PlayerSecurityChecker(plugin, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (ExecutorService region : regions) {
+            region.shutdownNow();
+        }
+    }
+
+    /**
+     * One full sweep: every player is checked on their region, the reports are looked up in one batch
+     * and the kicks run back on the regions.
+     */
+    @Benchmark
+    public int sweep() throws InterruptedException {
+        // Forget earlier verifications, so every privileged player is looked up again
+        for (Player player : players) {
+            checker.getVerificationCache().invalidate(player.getName());
+        }
+
+        checker.dispatch(players);
+        awaitRegions();
+        checker.lookupCandidates();
+        awaitRegions();
+
+        int sweepKicks = kicks.getAndSet(0);
+        if (sweepKicks != expectedKicks) {
+            throw new IllegalStateException("Expected " + expectedKicks + " kicks but got " + sweepKicks);
+        }
+        if (foreignReads.get() > 0) {
+            throw new IllegalStateException(foreignReads.get() + " player state reads happened outside the owning region");
+        }
+
+        return sweepKicks;
+    }
+
+    private void awaitRegions() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(regions.length);
+        for (ExecutorService region : regions) {
+            region.execute(latch::countDown);
+        }
+        latch.await();
+    }
+
+    private Player createRegionPlayer(Player delegate, int region) {
+        owners.put(delegate.getUniqueId(), region);
+
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    if (STATE_METHODS.contains(method.getName()) && !Objects.equals(CURRENT_REGION.get(), region)) {
+                        foreignReads.incrementAndGet();
+                    }
+
+                    switch (method.getName()) {
+                        case "kickPlayer":
+                            kicks.incrementAndGet();
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            try {
+                                return method.invoke(delegate, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+}
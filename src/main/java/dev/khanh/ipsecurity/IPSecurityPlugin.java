@@ -4,13 +4,21 @@ import com.github.Anon8281.universalScheduler.UniversalScheduler;
 import com.github.Anon8281.universalScheduler.scheduling.schedulers.TaskScheduler;
 import dev.khanh.ipsecurity.bot.DiscordBot;
 import dev.khanh.ipsecurity.command.IPSecurityCommand;
+import dev.khanh.ipsecurity.data.CachingDataStorage;
 import dev.khanh.ipsecurity.data.DataStorage;
+import dev.khanh.ipsecurity.data.InstrumentedDataStorage;
 import dev.khanh.ipsecurity.data.MySQLStorage;
 import dev.khanh.ipsecurity.data.SQLiteStorage;
+import dev.khanh.ipsecurity.data.StorageExecutor;
+import dev.khanh.ipsecurity.data.VersionedDataStorage;
 import dev.khanh.ipsecurity.data.YamlStorage;
 import dev.khanh.ipsecurity.file.Messages;
 import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.hook.LuckPermsHook;
 import dev.khanh.ipsecurity.listener.PlayerListener;
+import dev.khanh.ipsecurity.listener.PrivilegeChangeListener;
+import dev.khanh.ipsecurity.metrics.MetricsExporter;
+import dev.khanh.ipsecurity.metrics.PluginMetrics;
 import dev.khanh.ipsecurity.task.PlayerSecurityChecker;
 import dev.khanh.ipsecurity.task.UpdateChecker;
 import dev.khanh.ipsecurity.util.PluginLogger;
@@ -19,9 +27,14 @@ import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The main class of the IPSecurity plugin.
  *
@@ -50,7 +63,25 @@ public final class IPSecurityPlugin extends JavaPlugin {
      * Messages configuration of the plugin.
      */
     @Getter
-    private Messages messages;
+    private volatile Messages messages;
+
+    /**
+     * Metrics collected by the plugin.
+     */
+    @Getter
+    private PluginMetrics metrics;
+
+    /**
+     * Exporter publishing the metrics.
+     */
+    @Getter
+    private MetricsExporter metricsExporter;
+
+    /**
+     * Executor running the storage I/O.
+     */
+    @Getter
+    private StorageExecutor storageExecutor;
 
     /**
      * Data storage of the plugin.
@@ -58,6 +89,12 @@ public final class IPSecurityPlugin extends JavaPlugin {
     @Getter
     private DataStorage dataStorage;
 
+    /**
+     * Storage layer counting writes, below the cache so every write reaches it.
+     */
+    @Getter
+    private VersionedDataStorage versionedStorage;
+
     /**
      * Discord bot instance
      */
@@ -70,6 +107,12 @@ public final class IPSecurityPlugin extends JavaPlugin {
     @Getter
     private PlayerSecurityChecker checker;
 
+    /**
+     * Listener revalidating players when their privileges change, null if event-driven protection is disabled.
+     */
+    @Getter
+    private PrivilegeChangeListener privilegeChangeListener;
+
     @Override
     public void onEnable() {
         if (!VersionUtil.isCurrentServerVersionNewerOrEqual("1.16") && !isFullDependencyVersion()) {
@@ -89,6 +132,15 @@ public final class IPSecurityPlugin extends JavaPlugin {
 
         messages = new Messages(this);
 
+        metrics = new PluginMetrics();
+
+        storageExecutor = new StorageExecutor(
+                settings.getStorageThreads(),
+                settings.getStorageQueueSize(),
+                settings.isStorageCallerRuns(),
+                settings.isStorageVirtualThreads()
+        );
+
         setupDataStorage();
 
         discordBot = new DiscordBot(this);
@@ -101,8 +153,25 @@ public final class IPSecurityPlugin extends JavaPlugin {
 
         registerListeners(new PlayerListener(this));
 
+        if (checker != null && settings.isEventDrivenProtectEnable()) {
+            privilegeChangeListener = new PrivilegeChangeListener(this);
+            registerListeners(privilegeChangeListener);
+        }
+
+        if (checker != null && settings.isPreLoginRejectEnable() && privilegeChangeListener == null) {
+            PluginLogger.warning("Pre-login rejection requires event-driven protection, operators are checked on join instead");
+        }
+
+        if (checker != null) {
+            // One subscription, so the cached permissions are always dropped before the player is revalidated
+            LuckPermsHook.subscribeRecalculate(this, this::onPermissionsRecalculated);
+        }
+
         registerCommand();
 
+        metrics.registerComponents(this);
+        metricsExporter = new MetricsExporter(this);
+
         runUpdateChecker();
     }
 
@@ -112,6 +181,18 @@ public final class IPSecurityPlugin extends JavaPlugin {
             checker.cancel();
         }
 
+        if (privilegeChangeListener != null) {
+            privilegeChangeListener.cancel();
+        }
+
+        if (metricsExporter != null) {
+            metricsExporter.shutdown();
+        }
+
+        if (storageExecutor != null) {
+            storageExecutor.shutdown(10, TimeUnit.SECONDS);
+        }
+
         if (dataStorage != null) {
             dataStorage.shutdown();
         }
@@ -130,20 +211,47 @@ public final class IPSecurityPlugin extends JavaPlugin {
         switch (settings.getDataStorageType()) {
             case MYSQL: {
                 dataStorage = new MySQLStorage(this);
-                return;
+                break;
             }
             case SQLITE: {
                 dataStorage = new SQLiteStorage(this);
-                return;
+                break;
             }
             case YAML: {
                 dataStorage = new YamlStorage(this);
-                return;
+                break;
             }
             default: {
                 throw new RuntimeException("Invalid data storage type");
             }
         }
+
+        dataStorage = new InstrumentedDataStorage(
+                dataStorage,
+                metrics,
+                settings.getDataStorageType().name().toLowerCase(Locale.ROOT)
+        );
+
+        versionedStorage = new VersionedDataStorage(dataStorage);
+        dataStorage = versionedStorage;
+
+        if (settings.isStorageCacheEnable()) {
+            dataStorage = new CachingDataStorage(
+                    dataStorage,
+                    settings.getStorageCacheMaximumSize(),
+                    settings.getStorageCacheExpireAfter()
+            );
+        }
+    }
+
+    /**
+     * Gets the storage backend behind the cache, versioning and instrumentation.
+     *
+     * @return The underlying {@link DataStorage}
+     */
+    public DataStorage getBackendStorage() {
+        DataStorage storage = versionedStorage.getDelegate();
+        return storage instanceof InstrumentedDataStorage ? ((InstrumentedDataStorage) storage).getDelegate() : storage;
     }
 
     /**
@@ -157,6 +265,24 @@ public final class IPSecurityPlugin extends JavaPlugin {
             PluginLogger.info(String.format(" %s  OP", (settings.isCheckOp() ? "✔" : "✘")));
             PluginLogger.info(String.format(" %s  Gamemode", (settings.isCheckGamemode() ? "✔" : "✘")));
             PluginLogger.info(String.format(" %s  Permission", (!settings.getCheckPermissions().isEmpty() ? "✔" : "✘")));
+            PluginLogger.info(String.format(" %s  Event-driven revalidation", (settings.isEventDrivenProtectEnable() ? "✔" : "✘")));
+        }
+    }
+
+    /**
+     * Drops the cached permissions of a player whose permissions LuckPerms recalculated,
+     * then revalidates them if event-driven revalidation is enabled.
+     *
+     * @param uuid The UUID of the player.
+     */
+    private void onPermissionsRecalculated(UUID uuid) {
+        checker.getPermissionCache().invalidate(uuid);
+
+        if (privilegeChangeListener != null) {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                checker.revalidate(player);
+            }
         }
     }
 
@@ -194,6 +320,7 @@ public final class IPSecurityPlugin extends JavaPlugin {
 
     /**
      * Reloads the messages configuration.
+     * The new messages are fully loaded and compiled before they replace the old ones.
      */
     public void reloadMessages() {
         messages = new Messages(this);
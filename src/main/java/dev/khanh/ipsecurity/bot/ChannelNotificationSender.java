@@ -0,0 +1,75 @@
+package dev.khanh.ipsecurity.bot;
+
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.exceptions.PermissionException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Sends notifications to a text channel through the bot's gateway session.
+ *
+ * @author KhanhHuynh1402
+ */
+public class ChannelNotificationSender implements NotificationSender {
+    /**
+     * Errors Discord answers the same way for every retry, until staff fix the channel or the bot's permissions.
+     */
+    private static final Set<ErrorResponse> PERMANENT_ERRORS = EnumSet.of(
+            ErrorResponse.UNKNOWN_CHANNEL,
+            ErrorResponse.MISSING_ACCESS,
+            ErrorResponse.MISSING_PERMISSIONS,
+            ErrorResponse.INVALID_FORM_BODY
+    );
+
+    private final Supplier<TextChannel> channelSupplier;
+
+    /**
+     * Constructs a new ChannelNotificationSender.
+     *
+     * @param channelSupplier Supplies the channel to post in, may supply null while it is unavailable
+     */
+    public ChannelNotificationSender(Supplier<TextChannel> channelSupplier) {
+        this.channelSupplier = channelSupplier;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return channelSupplier.get() != null;
+    }
+
+    @Override
+    public boolean isComponentsSupported() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<?> send(MessageCreateData message) {
+        TextChannel channel = channelSupplier.get();
+        if (channel == null) {
+            CompletableFuture<?> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("The notification channel is unavailable"));
+            return future;
+        }
+        return channel.sendMessage(message).submit();
+    }
+
+    @Override
+    public Failure classify(Throwable throwable) {
+        // JDA checks the bot's permissions before sending and throws this instead of making the request
+        if (throwable instanceof PermissionException) {
+            return Failure.PERMANENT;
+        }
+        if (throwable instanceof ErrorResponseException
+                && PERMANENT_ERRORS.contains(((ErrorResponseException) throwable).getErrorResponse())) {
+            return Failure.PERMANENT;
+        }
+        // JDA waits out rate limits itself, so anything else may work on a later try
+        return Failure.TEMPORARY;
+    }
+}
@@ -0,0 +1,82 @@
+package dev.khanh.ipsecurity.bot;
+
+import dev.khanh.ipsecurity.util.PluginLogger;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out retries against a failing endpoint.
+ * Failures are retried with exponential backoff, and after {@value #FAILURE_THRESHOLD} in a row the
+ * circuit opens: only one probe is let through per cool-down until a send succeeds again.
+ *
+ * @author KhanhHuynh1402
+ */
+public class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long OPEN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN
+    }
+
+    private final String name;
+    @Getter
+    private volatile State state = State.CLOSED;
+    @Getter
+    private volatile int consecutiveFailures;
+    private volatile long nextAttemptAt;
+
+    /**
+     * Constructs a new CircuitBreaker.
+     *
+     * @param name The name of the guarded endpoint, used in log messages
+     */
+    public CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return true if a request may be sent now
+     */
+    public boolean allowRequest() {
+        return System.currentTimeMillis() >= nextAttemptAt;
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.OPEN) {
+            PluginLogger.info(name + " is reachable again, sending the backlog");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        nextAttemptAt = 0;
+    }
+
+    /**
+     * Records a failed request and schedules the next attempt.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            if (state == State.CLOSED) {
+                PluginLogger.warning(String.format("%s failed %d times in a row, retrying every %d minutes",
+                        name, consecutiveFailures, TimeUnit.MILLISECONDS.toMinutes(OPEN_MILLIS)));
+            }
+            state = State.OPEN;
+            nextAttemptAt = System.currentTimeMillis() + OPEN_MILLIS;
+            return;
+        }
+
+        long backoff = Math.min(MIN_BACKOFF_MILLIS << (consecutiveFailures - 1), MAX_BACKOFF_MILLIS);
+        nextAttemptAt = System.currentTimeMillis() + backoff;
+    }
+}
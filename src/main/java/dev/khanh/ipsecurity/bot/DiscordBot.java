@@ -2,9 +2,10 @@ package dev.khanh.ipsecurity.bot;
 
 import com.google.common.base.Preconditions;
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.bot.listener.ButtonCodec;
 import dev.khanh.ipsecurity.bot.listener.DiscordBotListener;
 import dev.khanh.ipsecurity.util.PluginLogger;
-import dev.khanh.ipsecurity.util.TaskUtil;
+import lombok.AccessLevel;
 import lombok.Getter;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
@@ -12,11 +13,27 @@ import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.exceptions.InvalidTokenException;
+import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
-import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents a Discord bot instance used for interactions with the server plugin.
@@ -26,90 +43,299 @@ import org.bukkit.configuration.ConfigurationSection;
  */
 @Getter
 public class DiscordBot {
+    /**
+     * First and largest delay between two attempts to connect or resolve the configured ids.
+     */
+    private static final long MIN_RETRY_DELAY_SECONDS = 1;
+    private static final long MAX_RETRY_DELAY_SECONDS = 60;
+    /**
+     * Members seen in interactions are kept in a small LRU, nothing else is cached.
+     */
+    private static final int MEMBER_CACHE_SIZE = 100;
+    /**
+     * Window over which the gateway event rate is reported after startup.
+     */
+    private static final long EVENT_RATE_WINDOW_SECONDS = 60;
+
     private final IPSecurityPlugin plugin;
-    private final JDA jda;
-    private final Guild guild;
-    private final Role role;
-    private final TextChannel channel;
+    private final boolean webhookMode;
+    @Getter(AccessLevel.NONE)
+    private final String token;
+    private final String guildID;
+    private final String roleID;
+    private final String channelID;
     private final DiscordBotListener listener;
+    private final NotificationQueue notificationQueue;
+    private final ButtonCodec buttonCodec;
+    @Getter(AccessLevel.NONE)
+    private final ScheduledExecutorService startupExecutor;
+    private volatile JDA jda;
+    private volatile Guild guild;
+    private volatile Role role;
+    private volatile TextChannel channel;
+    @Getter(AccessLevel.NONE)
+    private long retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+    private final LongAdder gatewayEvents;
+    @Getter(AccessLevel.NONE)
+    private long heapBeforeLogin;
+    @Getter(AccessLevel.NONE)
+    private int threadsBeforeLogin;
 
     /**
      * Constructs a new DiscordBot instance.
+     * The bot connects in the background, notifications are buffered until it is ready.
+     * In webhook mode no gateway session is opened and notifications go straight to the webhook.
      *
      * @param plugin The IPSecurityPlugin instance.
      */
-    @SuppressWarnings("deprecation")
     public DiscordBot(IPSecurityPlugin plugin) {
         this.plugin = plugin;
+        this.webhookMode = plugin.getSettings().isDiscordWebhookMode();
 
         ConfigurationSection section = plugin.getSettings().getConfig().getConfigurationSection("discord");
         Preconditions.checkNotNull(section, "[config.yml] discord section is null");
 
-        String token = section.getString("token");
+        NotificationSender sender;
 
-        listener = new DiscordBotListener(this);
+        if (webhookMode) {
+            token = null;
+            guildID = null;
+            roleID = null;
+            channelID = null;
+            buttonCodec = null;
+            listener = null;
+            gatewayEvents = null;
+            startupExecutor = null;
 
-        jda = JDABuilder.createDefault(token)
-                .addEventListeners(listener)
-                .build();
+            sender = new WebhookNotificationSender(plugin.getSettings().getDiscordWebhookUrl());
+        } else {
+            token = section.getString("token");
+            Preconditions.checkNotNull(token, "[config.yml] discord.token is null");
+
+            guildID = section.getString("guild");
+            Preconditions.checkNotNull(guildID, "[config.yml] discord.guild is null");
+
+            roleID = section.getString("role");
+            Preconditions.checkNotNull(roleID, "[config.yml] discord.role is null");
+
+            channelID = section.getString("notification-channel");
+            Preconditions.checkNotNull(channelID, "[config.yml] discord.notification-channel is null");
+
+            buttonCodec = new ButtonCodec(
+                    new File(plugin.getDataFolder(), "button-secret.key"),
+                    plugin.getSettings().getAddIPButtonExpireAfter()
+            );
+
+            listener = new DiscordBotListener(this);
+
+            gatewayEvents = plugin.getMetrics().getRegistry().counter(
+                    "ipsecurity_discord_gateway_events_total", "Gateway events received by the discord bot");
+
+            startupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "IPSecurity-Discord-Startup");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // The sender only sends once the channel is resolved, until then the queue buffers in order
+            sender = new ChannelNotificationSender(this::getChannel);
+        }
+
+        notificationQueue = new NotificationQueue(
+                sender,
+                plugin.getSettings().getNotificationQueueCapacity(),
+                plugin.getSettings().getNotificationFlushInterval(),
+                plugin.getMetrics().getNotificationSendLatency(),
+                openSpool()
+        );
+
+        if (webhookMode) {
+            PluginLogger.info("Sending discord notifications through a webhook, slash commands and buttons are disabled");
+        } else {
+            PluginLogger.info("Initializing discord bot in the background...");
+            startupExecutor.execute(this::connect);
+        }
+    }
+
+    /**
+     * Opens the notification spool if it is enabled.
+     *
+     * @return The spool, or null if it is disabled or could not be opened
+     */
+    @Nullable
+    private NotificationSpool openSpool() {
+        if (!plugin.getSettings().isNotificationSpoolEnable()) {
+            return null;
+        }
+
+        try {
+            return new NotificationSpool(
+                    new File(plugin.getDataFolder(), "spool"),
+                    plugin.getSettings().getNotificationSpoolMaximumSize()
+            );
+        } catch (IOException e) {
+            PluginLogger.severe("Unable to open the notification spool, notifications are kept in memory only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the bot is connected and the guild, role and channel are resolved, always true in webhook mode
+     */
+    public boolean isReady() {
+        return webhookMode || (channel != null && role != null);
+    }
 
-        PluginLogger.info("Initializing discord bot...");
+    /**
+     * Logs in and waits for the gateway, retrying with backoff on failure.
+     */
+    private void connect() {
         try {
+            if (jda == null) {
+                heapBeforeLogin = getUsedHeap();
+                threadsBeforeLogin = ManagementFactory.getThreadMXBean().getThreadCount();
+
+                // Interactions arrive without any intent, only the implicit GUILDS intent is needed
+                // to resolve the guild, role and channel. Every optional cache is left disabled.
+                jda = JDABuilder.createLight(token, EnumSet.noneOf(GatewayIntent.class))
+                        .setMemberCachePolicy(MemberCachePolicy.lru(MEMBER_CACHE_SIZE))
+                        .setChunkingFilter(ChunkingFilter.NONE)
+                        .setEnableShutdownHook(false)
+                        .addEventListeners(listener, (EventListener) event -> gatewayEvents.increment())
+                        .build();
+            }
             jda.awaitReady();
+            logFootprint();
+        } catch (InvalidTokenException e) {
+            PluginLogger.severe("Unable to log in the discord bot, the token is invalid");
+            return;
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            // Interrupted by shutdown
+            return;
+        } catch (RuntimeException e) {
+            scheduleRetry(this::connect, "Unable to connect the discord bot: " + e.getMessage());
+            return;
+        }
+
+        resolve();
+    }
+
+    /**
+     * Looks up the configured guild, role and channel, retrying with backoff until all are found.
+     * The ids can be missing from the cache for a while after the bot becomes ready.
+     */
+    @SuppressWarnings("deprecation")
+    private void resolve() {
+        Guild foundGuild = jda.getGuildById(guildID);
+        if (foundGuild == null) {
+            scheduleRetry(this::resolve, "Couldn't find any guild with id: " + guildID);
+            return;
         }
 
-        String guildID = section.getString("guild");
-        Preconditions.checkNotNull(guildID, "[config.yml] discord.guild is null");
-        guild = jda.getGuildById(guildID);
-        Preconditions.checkNotNull(guild, "Couldn't find any guild with id: " + guildID);
+        Role foundRole = foundGuild.getRoleById(roleID);
+        if (foundRole == null) {
+            scheduleRetry(this::resolve, "Couldn't find any role with id: " + roleID);
+            return;
+        }
 
-        String roleID = section.getString("role");
-        Preconditions.checkNotNull(roleID, "[config.yml] discord.role is null");
-        role = jda.getRoleById(roleID);
-        Preconditions.checkNotNull(role, "Couldn't find any role with id: " + roleID);
+        TextChannel foundChannel = foundGuild.getTextChannelById(channelID);
+        if (foundChannel == null) {
+            scheduleRetry(this::resolve, "Couldn't find any chat channel with id: " + channelID);
+            return;
+        }
 
-        String channelID = section.getString("notification-channel");
-        Preconditions.checkNotNull(channelID, "[config.yml] discord.notification-channel is null");
-        channel = guild.getTextChannelById(channelID);
-        Preconditions.checkNotNull(channel, "Couldn't find any chat channel with id: " + channelID);
+        guild = foundGuild;
+        role = foundRole;
+        channel = foundChannel;
+        retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
 
         // Run sync delayed task to avoid DiscordSRV deleting commands
-        plugin.getScheduler().scheduleSyncDelayedTask(() -> guild.updateCommands().addCommands(
+        plugin.getScheduler().scheduleSyncDelayedTask(() -> foundGuild.updateCommands().addCommands(
                 Commands.slash("ipsecurity", "IPSecurity Commands")
-                        .addSubcommands(new SubcommandData("set", "Set player's ip")
+                        .addSubcommands(new SubcommandData("set", "Set player's allowed ips")
+                                .addOption(OptionType.STRING, "player", "Player's name")
+                                .addOption(OptionType.STRING, "ip", "IPs or CIDR ranges, separated by commas"))
+                        .addSubcommands(new SubcommandData("add", "Allow another ip for player")
                                 .addOption(OptionType.STRING, "player", "Player's name")
-                                .addOption(OptionType.STRING, "ip", "Player's ip"))
+                                .addOption(OptionType.STRING, "ip", "IP or CIDR range"))
                         .addSubcommands(new SubcommandData("remove", "Remove player's ip")
-                                .addOption(OptionType.STRING, "player", "Player's name"))
+                                .addOption(OptionType.STRING, "player", "Player's name")
+                                .addOption(OptionType.STRING, "ip", "IP or CIDR range to remove, all if empty"))
         ).onSuccess(commands -> PluginLogger.info("Registered slash commands")).queue(), 10);
 
         PluginLogger.info("Successfully initialized discord bot");
     }
 
+    /**
+     * Reports the heap and threads used by the bot, and the gateway event rate once the window has passed.
+     */
+    private void logFootprint() {
+        long heapDelta = getUsedHeap() - heapBeforeLogin;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        PluginLogger.info(String.format("Discord bot footprint: heap %+.1f MB, threads %+d (%d total)",
+                heapDelta / 1048576D, threads - threadsBeforeLogin, threads));
+
+        long eventsAtReady = gatewayEvents.sum();
+        startupExecutor.schedule(() -> {
+            long events = gatewayEvents.sum() - eventsAtReady;
+            PluginLogger.info(String.format("Discord gateway: %d events in the first %ds after ready (%.2f/s)",
+                    events, EVENT_RATE_WINDOW_SECONDS, (double) events / EVENT_RATE_WINDOW_SECONDS));
+        }, EVENT_RATE_WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long getUsedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void scheduleRetry(Runnable task, String reason) {
+        PluginLogger.warning(reason + ". Retrying in " + retryDelaySeconds + "s");
+
+        try {
+            startupExecutor.schedule(task, retryDelaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            return;
+        }
+        retryDelaySeconds = Math.min(retryDelaySeconds * 2, MAX_RETRY_DELAY_SECONDS);
+    }
+
     /**
      * Sends a notification message to the configured channel.
      *
      * @param messageEmbed The message to send as an embed.
      */
     public void sendNotification(MessageEmbed messageEmbed) {
-        TaskUtil.runAsync(() -> channel.sendMessageEmbeds(messageEmbed).queue());
+        sendNotification(messageEmbed, null, null, null);
     }
 
     /**
-     * Sends a notification message to the configured channel.
+     * Queues a notification message for the configured channel.
+     * Notifications are merged into as few messages as possible and duplicates still queued are summarized.
      *
-     * @param message The {@link MessageCreateData} to send.
+     * @param messageEmbed The message to send as an embed.
+     * @param button       The button attached to the message, may be null.
+     * @param subject      The player the notification is about, may be null.
+     * @param key          The duplicate key, may be null.
      */
-    public void sendNotification(MessageCreateData message) {
-        TaskUtil.runAsync(() -> channel.sendMessage(message).queue());
+    public void sendNotification(MessageEmbed messageEmbed, @Nullable Button button, @Nullable String subject, @Nullable String key) {
+        if (!notificationQueue.offer(messageEmbed, button, subject, key)) {
+            PluginLogger.debug("Notification queue is full, dropped a notification");
+        }
     }
 
     /**
      * Shuts down the Discord bot.
      */
     public void shutdown() {
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
+        }
+
+        if (notificationQueue != null) {
+            notificationQueue.shutdown();
+        }
+
         if (jda != null) {
             try {
                 jda.shutdown();
@@ -0,0 +1,530 @@
+package dev.khanh.ipsecurity.bot;
+
+import dev.khanh.ipsecurity.metrics.LatencyHistogram;
+import dev.khanh.ipsecurity.util.PluginLogger;
+import lombok.Getter;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue merging notifications into as few Discord messages as possible.
+ * Every flush window up to {@value #MAX_EMBEDS_PER_MESSAGE} queued embeds are sent as one message,
+ * and only once the previous message was accepted, so bursts never pile up inside JDA.
+ * Messages that fail are put back in front and retried through a {@link CircuitBreaker}, unless the
+ * {@link NotificationSender} reports a failure no retry can fix, and with a
+ * {@link NotificationSpool} queued notifications also survive restarts.
+ *
+ * @author KhanhHuynh1402
+ */
+public class NotificationQueue {
+    /**
+     * Discord's limit of embeds per message.
+     */
+    public static final int MAX_EMBEDS_PER_MESSAGE = 10;
+    private static final int MAX_BUTTONS_PER_ROW = 5;
+    /**
+     * Room left per embed for the repeat note added when rendering.
+     */
+    private static final int REPEAT_NOTE_LENGTH = 48;
+    /**
+     * Delay between two forced writes of the spool, so a burst shares one fsync.
+     */
+    private static final long SPOOL_SYNC_MILLIS = 200;
+
+    @Getter
+    private final NotificationSender sender;
+    private final int capacity;
+    private final Deque<Notification> queue = new ArrayDeque<>();
+    private final Map<String, Notification> pendingByKey = new HashMap<>();
+    private final List<Notification> unspooled = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentEmbeds = new AtomicLong();
+    private final LatencyHistogram sendLatency;
+    @Getter
+    private final NotificationSpool spool;
+    @Getter
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("Discord");
+    @Getter
+    private volatile long lastSendNanos;
+
+    /**
+     * Constructs a new NotificationQueue.
+     *
+     * @param sender              Delivers the messages, nothing is sent while it is unavailable
+     * @param capacity            Maximum number of queued notifications
+     * @param flushIntervalMillis Length of the flush window in milliseconds
+     * @param sendLatency         Histogram recording how long Discord took to accept each message
+     * @param spool               Spool keeping the queue on disk, may be null to keep it in memory only
+     */
+    public NotificationQueue(NotificationSender sender, int capacity, long flushIntervalMillis,
+                             LatencyHistogram sendLatency, @Nullable NotificationSpool spool) {
+        this.sender = sender;
+        this.capacity = capacity;
+        this.sendLatency = sendLatency;
+        this.spool = spool;
+
+        if (spool != null) {
+            // Replayed notifications are queued even above the capacity, the spool size cap bounds them
+            for (NotificationSpool.Record record : spool.takeReplayed()) {
+                try {
+                    Notification notification = Notification.decode(record.getPayload());
+                    notification.position = record.getPosition();
+                    queue.add(notification);
+                    if (notification.key != null) {
+                        pendingByKey.putIfAbsent(notification.key, notification);
+                    }
+                } catch (RuntimeException e) {
+                    PluginLogger.warning("Skipping an unreadable spooled notification: " + e.getMessage());
+                }
+            }
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IPSecurity-Discord-Notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        if (spool != null) {
+            scheduler.scheduleWithFixedDelay(this::syncSpool, SPOOL_SYNC_MILLIS, SPOOL_SYNC_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a notification.
+     * A notification with the same key as one still queued is merged into it instead.
+     *
+     * @param embed   The embed to send
+     * @param button  The button attached to the embed, may be null
+     * @param subject Who the notification is about, added to the button label when several are merged, may be null
+     * @param key     The duplicate key, for example the player and IP, may be null
+     * @return false if the queue is full and the notification was dropped
+     */
+    public synchronized boolean offer(MessageEmbed embed, @Nullable Button button, @Nullable String subject, @Nullable String key) {
+        if (key != null) {
+            Notification pending = pendingByKey.get(key);
+            if (pending != null) {
+                pending.repeats++;
+                duplicates.incrementAndGet();
+                return true;
+            }
+        }
+
+        if (queue.size() >= capacity) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        Notification notification = new Notification(embed, button, subject, key);
+
+        queue.add(notification);
+        if (key != null) {
+            pendingByKey.put(key, notification);
+        }
+        // Offered from the server thread, so the spool is written later by the notifier thread
+        if (spool != null) {
+            notification.unspooled = true;
+            unspooled.add(notification);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of queued notifications
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of notifications dropped because the queue or spool was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of notifications merged into an already queued one
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return The number of Discord messages sent
+     */
+    public long getSentMessageCount() {
+        return sentMessages.get();
+    }
+
+    /**
+     * @return The number of embeds sent
+     */
+    public long getSentEmbedCount() {
+        return sentEmbeds.get();
+    }
+
+    /**
+     * Stops the flush task and the sender. Notifications still queued stay in the spool.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        sender.shutdown();
+
+        if (spool != null) {
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            spoolPending();
+            spool.close();
+        }
+    }
+
+    /**
+     * Appends the notifications offered since the last call to the spool.
+     * Runs on the notifier thread, so the thread offering a notification never waits for the disk.
+     * Notifications offered after the snapshot are not polled until the next call, see {@link #poll()}.
+     */
+    private void spoolPending() {
+        List<Notification> pending;
+        int[] repeats;
+        synchronized (this) {
+            if (unspooled.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<>(unspooled);
+            unspooled.clear();
+
+            // Merged duplicates are counted under the queue lock
+            repeats = new int[pending.size()];
+            for (int i = 0; i < repeats.length; i++) {
+                repeats[i] = pending.get(i).repeats;
+            }
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            Notification notification = pending.get(i);
+            // Only read by poll(), which runs on this thread too
+            notification.unspooled = false;
+
+            NotificationSpool.Position position;
+            try {
+                position = spool.append(notification.encode(repeats[i]));
+            } catch (IOException e) {
+                // Still deliver it, it is only not durable
+                PluginLogger.severe("Unable to spool a discord notification: " + e.getMessage());
+                continue;
+            }
+
+            if (position == null) {
+                discard(notification);
+            } else {
+                notification.position = position;
+            }
+        }
+    }
+
+    /**
+     * Drops a queued notification that did not fit into the spool.
+     */
+    private synchronized void discard(Notification notification) {
+        queue.remove(notification);
+        if (notification.key != null && pendingByKey.get(notification.key) == notification) {
+            pendingByKey.remove(notification.key);
+        }
+        dropped.incrementAndGet();
+    }
+
+    private void syncSpool() {
+        try {
+            spoolPending();
+            spool.sync();
+        } catch (Throwable throwable) {
+            PluginLogger.severe("Unable to write the notification spool: " + throwable.getMessage());
+        }
+    }
+
+    /**
+     * Sends one message with up to {@value #MAX_EMBEDS_PER_MESSAGE} queued embeds.
+     */
+    private void flush() {
+        try {
+            if (spool != null) {
+                spoolPending();
+            }
+            sendNext();
+        } catch (Throwable throwable) {
+            // An exception would cancel the scheduled flush for good
+            sending.set(false);
+            PluginLogger.severe("Unable to flush Discord notifications: " + throwable.getMessage());
+        }
+    }
+
+    private void sendNext() {
+        if (!sender.isAvailable() || !circuitBreaker.allowRequest() || !sending.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<Notification> batch = poll();
+
+        if (batch.isEmpty()) {
+            sending.set(false);
+            return;
+        }
+
+        MessageCreateData message;
+        try {
+            message = buildMessage(batch);
+        } catch (RuntimeException e) {
+            // Retrying would fail the same way, so drop it rather than block the queue
+            PluginLogger.severe("Dropping discord notifications that cannot be sent: " + e.getMessage());
+            acknowledge(batch);
+            sending.set(false);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            sender.send(message).whenComplete((result, throwable) -> {
+                lastSendNanos = System.nanoTime() - start;
+
+                if (throwable != null) {
+                    // Requeue before the next send may start, to keep the order
+                    handleFailure(batch, throwable);
+                    sending.set(false);
+                    return;
+                }
+
+                sendLatency.record(lastSendNanos);
+                circuitBreaker.onSuccess();
+                sentMessages.incrementAndGet();
+                sentEmbeds.addAndGet(batch.size());
+                acknowledge(batch);
+                sending.set(false);
+            });
+        } catch (RuntimeException e) {
+            handleFailure(batch, e);
+            sending.set(false);
+        }
+    }
+
+    /**
+     * Retries a failed batch later, unless the failure would repeat on every retry.
+     */
+    private void handleFailure(List<Notification> batch, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+
+        switch (sender.classify(cause)) {
+            case PERMANENT:
+                // Retrying would block the queue for good, so let the following notifications through
+                PluginLogger.severe(String.format("Dropping %d discord notification(s) that cannot be delivered: %s",
+                        batch.size(), cause.getMessage()));
+                acknowledge(batch);
+                break;
+            case RATE_LIMITED:
+                // The sender stays unavailable until the rate limit is over, which is not a failure of Discord
+                PluginLogger.debug("Discord notifications are rate limited: " + cause.getMessage());
+                requeue(batch);
+                break;
+            default:
+                PluginLogger.debug("Unable to send Discord notification: " + cause.getMessage());
+                circuitBreaker.onFailure();
+                requeue(batch);
+        }
+    }
+
+    private MessageCreateData buildMessage(List<Notification> batch) {
+        MessageCreateBuilder builder = new MessageCreateBuilder();
+        List<Button> buttons = new ArrayList<>();
+        boolean componentsSupported = sender.isComponentsSupported();
+
+        builder.addEmbeds(render(batch));
+        for (Notification notification : batch) {
+            if (notification.button != null && componentsSupported) {
+                buttons.add(notification.button);
+            }
+        }
+
+        // Merged buttons would all read the same, so tell them apart by subject
+        if (buttons.size() > 1) {
+            int index = 0;
+            for (Notification notification : batch) {
+                if (notification.button != null && notification.subject != null) {
+                    String label = notification.button.getLabel() + " - " + notification.subject;
+                    buttons.set(index, notification.button.withLabel(label.length() > Button.LABEL_MAX_LENGTH
+                            ? label.substring(0, Button.LABEL_MAX_LENGTH) : label));
+                }
+                if (notification.button != null) {
+                    index++;
+                }
+            }
+        }
+
+        List<ActionRow> rows = new ArrayList<>();
+        for (int i = 0; i < buttons.size(); i += MAX_BUTTONS_PER_ROW) {
+            rows.add(ActionRow.of(buttons.subList(i, Math.min(i + MAX_BUTTONS_PER_ROW, buttons.size()))));
+        }
+        builder.setComponents(rows);
+
+        return builder.build();
+    }
+
+    /**
+     * Renders the embeds of a batch. A requeued notification can still be merged into,
+     * so the repeat counts are read under the queue lock.
+     */
+    private synchronized List<MessageEmbed> render(List<Notification> batch) {
+        List<MessageEmbed> embeds = new ArrayList<>(batch.size());
+        for (Notification notification : batch) {
+            embeds.add(notification.render());
+        }
+        return embeds;
+    }
+
+    /**
+     * Puts a failed batch back in front of the queue, in its original order.
+     */
+    private synchronized void requeue(List<Notification> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Notification notification = batch.get(i);
+            queue.addFirst(notification);
+            if (notification.key != null) {
+                pendingByKey.putIfAbsent(notification.key, notification);
+            }
+        }
+    }
+
+    private void acknowledge(List<Notification> batch) {
+        if (spool == null) {
+            return;
+        }
+
+        List<NotificationSpool.Position> positions = new ArrayList<>(batch.size());
+        for (Notification notification : batch) {
+            if (notification.position != null) {
+                positions.add(notification.position);
+            }
+        }
+
+        try {
+            spool.acknowledge(positions);
+        } catch (IOException e) {
+            // Those notifications are sent again after a restart, which is better than losing any
+            PluginLogger.severe("Unable to acknowledge spooled notifications: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the next batch. Stops at the first notification not spooled yet, which was offered after
+     * {@link #spoolPending()} took its snapshot: sent now it would never be acknowledged, and the next
+     * snapshot would still append it to the spool.
+     */
+    private synchronized List<Notification> poll() {
+        List<Notification> batch = new ArrayList<>(MAX_EMBEDS_PER_MESSAGE);
+        int length = 0;
+
+        while (batch.size() < MAX_EMBEDS_PER_MESSAGE && !queue.isEmpty() && !queue.peek().unspooled) {
+            // All embeds of a message share one character limit
+            int embedLength = queue.peek().embed.getLength() + REPEAT_NOTE_LENGTH;
+            if (!batch.isEmpty() && length + embedLength > MessageEmbed.EMBED_MAX_LENGTH_BOT) {
+                break;
+            }
+            length += embedLength;
+
+            Notification notification = queue.poll();
+            if (notification.key != null) {
+                pendingByKey.remove(notification.key);
+            }
+            batch.add(notification);
+        }
+
+        return batch;
+    }
+
+    private static final class Notification {
+        private final MessageEmbed embed;
+        private final Button button;
+        private final String subject;
+        private final String key;
+        private int repeats;
+        private NotificationSpool.Position position;
+        private boolean unspooled;
+
+        private Notification(MessageEmbed embed, Button button, String subject, String key) {
+            this.embed = embed;
+            this.button = button;
+            this.subject = subject;
+            this.key = key;
+        }
+
+        private byte[] encode(int repeats) {
+            DataObject data = DataObject.empty().put("embed", embed.toData());
+            if (repeats > 0) {
+                data.put("repeats", repeats);
+            }
+            if (button != null) {
+                data.put("button", DataObject.empty()
+                        .put("style", button.getStyle().getKey())
+                        .put("id", button.getId())
+                        .put("label", button.getLabel()));
+            }
+            if (subject != null) {
+                data.put("subject", subject);
+            }
+            if (key != null) {
+                data.put("key", key);
+            }
+            return data.toJson();
+        }
+
+        private static Notification decode(byte[] payload) {
+            DataObject data = DataObject.fromJson(payload);
+
+            Button button = null;
+            if (data.hasKey("button")) {
+                DataObject buttonData = data.getObject("button");
+                button = Button.of(ButtonStyle.fromKey(buttonData.getInt("style")),
+                        buttonData.getString("id"), buttonData.getString("label"));
+            }
+
+            Notification notification = new Notification(
+                    EmbedBuilder.fromData(data.getObject("embed")).build(),
+                    button,
+                    data.getString("subject", null),
+                    data.getString("key", null)
+            );
+            notification.repeats = data.getInt("repeats", 0);
+            return notification;
+        }
+
+        private MessageEmbed render() {
+            if (repeats == 0) {
+                return embed;
+            }
+            return new EmbedBuilder(embed)
+                    .appendDescription("\n*Repeated " + repeats + " more time(s)*")
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dev.khanh.ipsecurity.bot;
+
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport delivering the messages built by the {@link NotificationQueue}.
+ *
+ * @author KhanhHuynh1402
+ */
+public interface NotificationSender {
+    /**
+     * @return true if a message can be sent right now
+     */
+    boolean isAvailable();
+
+    /**
+     * @return true if interactive components such as buttons can be attached
+     */
+    boolean isComponentsSupported();
+
+    /**
+     * Sends a message.
+     *
+     * @param message The message
+     * @return A future completed once Discord accepted the message
+     */
+    CompletableFuture<?> send(MessageCreateData message);
+
+    /**
+     * Tells whether a failed send is worth retrying.
+     *
+     * @param throwable The failure of {@link #send}, unwrapped from any CompletionException
+     * @return How the failure has to be handled
+     */
+    default Failure classify(Throwable throwable) {
+        return Failure.TEMPORARY;
+    }
+
+    /**
+     * Releases the resources of the sender.
+     */
+    default void shutdown() {
+    }
+
+    /**
+     * Kind of a failed send.
+     */
+    enum Failure {
+        /**
+         * The endpoint may accept the message later, e.g. a timeout or a server error.
+         */
+        TEMPORARY,
+        /**
+         * The endpoint asked to slow down, the sender is unavailable until it may send again.
+         */
+        RATE_LIMITED,
+        /**
+         * The endpoint will never accept the message, e.g. a deleted webhook or a missing permission.
+         */
+        PERMANENT
+    }
+}
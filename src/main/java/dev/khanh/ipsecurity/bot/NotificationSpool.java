@@ -0,0 +1,288 @@
+package dev.khanh.ipsecurity.bot;
+
+import dev.khanh.ipsecurity.util.PluginLogger;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk spool of notifications that were not delivered yet.
+ * Records are appended to segment files and forced to disk in batches by {@link #sync()}.
+ * Delivery is acknowledged by position, and segments that are fully acknowledged are deleted.
+ * A record is {@code [length][crc32][payload]}, a torn record at the end of a segment is ignored on replay.
+ *
+ * @author KhanhHuynh1402
+ */
+public class NotificationSpool {
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+
+    @Getter
+    private final File directory;
+    @Getter
+    private final long maximumBytes;
+    private final File ackFile;
+    private final List<Record> replayed = new ArrayList<>();
+    private FileChannel segment;
+    private long segmentId;
+    private long segmentOffset;
+    private boolean dirty;
+    @Getter
+    private volatile long pendingBytes;
+    @Getter
+    private volatile int pendingRecords;
+
+    /**
+     * Opens the spool and reads back the records that were not acknowledged.
+     *
+     * @param directory    The spool directory
+     * @param maximumBytes Maximum size of the unacknowledged records
+     * @throws IOException If the spool could not be opened
+     */
+    public NotificationSpool(File directory, long maximumBytes) throws IOException {
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.ackFile = new File(directory, "ack");
+
+        Files.createDirectories(directory.toPath());
+
+        long lastSegmentId = replay();
+        openSegment(lastSegmentId + 1);
+    }
+
+    /**
+     * Takes the records read back when the spool was opened, in their original order.
+     *
+     * @return The replayed records, empty on later calls
+     */
+    public synchronized List<Record> takeReplayed() {
+        List<Record> records = new ArrayList<>(replayed);
+        replayed.clear();
+        return records;
+    }
+
+    /**
+     * Appends a record. It is durable after the next {@link #sync()}.
+     * This writes to disk, and may force a full segment to it, so it must not run on the server thread.
+     *
+     * @param payload The record payload
+     * @return The position of the record, or null if the spool is full
+     * @throws IOException If the record could not be written
+     */
+    public synchronized Position append(byte[] payload) throws IOException {
+        int size = HEADER_SIZE + payload.length;
+        if (pendingBytes + size > maximumBytes) {
+            return null;
+        }
+
+        if (segmentOffset >= SEGMENT_SIZE) {
+            sync();
+            segment.close();
+            openSegment(segmentId + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+
+        segmentOffset += size;
+        pendingBytes += size;
+        pendingRecords++;
+        dirty = true;
+
+        return new Position(segmentId, segmentOffset, size);
+    }
+
+    /**
+     * Forces the appended records to disk, if there are any.
+     *
+     * @throws IOException If the records could not be forced
+     */
+    public synchronized void sync() throws IOException {
+        if (dirty) {
+            segment.force(false);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Acknowledges every record up to and including the given positions, which must be in order.
+     *
+     * @param positions The positions of the delivered records
+     * @throws IOException If the acknowledgement could not be written
+     */
+    public synchronized void acknowledge(List<Position> positions) throws IOException {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        for (Position position : positions) {
+            pendingBytes -= position.size;
+            pendingRecords--;
+        }
+
+        Position last = positions.get(positions.size() - 1);
+
+        File tempFile = new File(directory, "ack.tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(16).putLong(last.segmentId).putLong(last.offset);
+        Files.write(tempFile.toPath(), buffer.array());
+        Files.move(tempFile.toPath(), ackFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (long id : listSegments().keySet()) {
+            if (id < last.segmentId) {
+                Files.deleteIfExists(segmentFile(id).toPath());
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the spool.
+     */
+    public synchronized void close() {
+        try {
+            sync();
+            segment.close();
+        } catch (IOException e) {
+            PluginLogger.severe("Unable to close the notification spool: " + e.getMessage());
+        }
+    }
+
+    private long replay() throws IOException {
+        long ackSegment = -1;
+        long ackOffset = 0;
+
+        if (ackFile.exists()) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(ackFile.toPath()));
+            if (buffer.remaining() == 16) {
+                ackSegment = buffer.getLong();
+                ackOffset = buffer.getLong();
+            }
+        }
+
+        // New segments must sort after the acknowledged one even if every segment was deleted
+        long lastId = Math.max(0, ackSegment);
+        for (long id : listSegments().keySet()) {
+            lastId = Math.max(lastId, id);
+
+            if (id < ackSegment) {
+                Files.deleteIfExists(segmentFile(id).toPath());
+                continue;
+            }
+
+            readSegment(id, id == ackSegment ? ackOffset : 0);
+        }
+
+        if (!replayed.isEmpty()) {
+            PluginLogger.info("Recovered " + replayed.size() + " undelivered discord notifications");
+        }
+        return lastId;
+    }
+
+    private void readSegment(long id, long startOffset) throws IOException {
+        byte[] bytes = Files.readAllBytes(segmentFile(id).toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position((int) Math.min(startOffset, bytes.length));
+
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length < 0 || length > buffer.remaining()) {
+                // Torn write from a crash, everything before it is intact
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                PluginLogger.warning("Skipping the corrupted rest of notification spool segment " + id);
+                break;
+            }
+
+            int size = HEADER_SIZE + length;
+            replayed.add(new Record(payload, new Position(id, buffer.position(), size)));
+            pendingBytes += size;
+            pendingRecords++;
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        segmentId = id;
+        segmentOffset = 0;
+        segment = FileChannel.open(segmentFile(id).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private TreeMap<Long, File> listSegments() {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return segments;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {
+                    // Not a segment
+                }
+            }
+        }
+        return segments;
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Location of a record in the spool.
+     */
+    public static final class Position {
+        private final long segmentId;
+        private final long offset;
+        private final int size;
+
+        private Position(long segmentId, long offset, int size) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A record read back from the spool.
+     */
+    @Getter
+    public static final class Record {
+        private final byte[] payload;
+        private final Position position;
+
+        private Record(byte[] payload, Position position) {
+            this.payload = payload;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package dev.khanh.ipsecurity.bot;
+
+import lombok.Getter;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends notifications to a Discord webhook over plain HTTP, without any gateway session.
+ * Webhooks that do not belong to an application cannot carry buttons, so none are sent.
+ *
+ * @author KhanhHuynh1402
+ */
+public class WebhookNotificationSender implements NotificationSender {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    @Getter
+    private final HttpUrl url;
+    private final OkHttpClient client;
+    private volatile long rateLimitedUntil;
+
+    /**
+     * Constructs a new WebhookNotificationSender.
+     *
+     * @param url The webhook URL, any HTTP endpoint accepting the Discord webhook payload
+     * @throws IllegalArgumentException If the URL is not a valid HTTP or HTTPS URL
+     */
+    public WebhookNotificationSender(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid webhook URL: " + url);
+        }
+        // Wait for the message to be created so failures are reported instead of silently dropped
+        this.url = parsed.newBuilder().setQueryParameter("wait", "true").build();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(2);
+        dispatcher.setMaxRequestsPerHost(2);
+
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(1, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= rateLimitedUntil;
+    }
+
+    @Override
+    public boolean isComponentsSupported() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<?> send(MessageCreateData message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(message.toData().toJson(), JSON))
+                .build();
+
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (Response ignored = response) {
+                    if (response.isSuccessful()) {
+                        future.complete(null);
+                        return;
+                    }
+
+                    if (response.code() == 429) {
+                        rateLimitedUntil = System.currentTimeMillis() + getRetryAfterMillis(response);
+                    }
+                    future.completeExceptionally(new HttpStatusException(response.code()));
+                }
+            }
+        });
+
+        return future;
+    }
+
+    @Override
+    public Failure classify(Throwable throwable) {
+        if (!(throwable instanceof HttpStatusException)) {
+            return Failure.TEMPORARY;
+        }
+
+        int code = ((HttpStatusException) throwable).getCode();
+        if (code == 429) {
+            return Failure.RATE_LIMITED;
+        }
+        // Other client errors, e.g. a deleted webhook or a rejected payload, fail the same way every time
+        return code >= 400 && code < 500 && code != 408 ? Failure.PERMANENT : Failure.TEMPORARY;
+    }
+
+    @Override
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static long getRetryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        try {
+            return retryAfter == null ? 1000 : (long) (Double.parseDouble(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    /**
+     * The webhook answered with an unsuccessful HTTP status.
+     */
+    private static final class HttpStatusException extends IOException {
+        @Getter
+        private final int code;
+
+        private HttpStatusException(int code) {
+            super("Webhook responded with HTTP " + code);
+            this.code = code;
+        }
+    }
+}
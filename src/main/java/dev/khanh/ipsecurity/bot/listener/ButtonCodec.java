@@ -0,0 +1,229 @@
+package dev.khanh.ipsecurity.bot.listener;
+
+import dev.khanh.ipsecurity.ip.IPAddressParser;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Encodes {@link ButtonData} into a signed button custom id, so button clicks need no server-side state.
+ * <p>
+ * Layout before encoding: version (1), expiry in epoch seconds (4), address length (1), address (4 or 16),
+ * player name (UTF-8), followed by a truncated HMAC-SHA256 of all of it. The bytes are packed with base-85
+ * and prefixed with {@value #PREFIX}.
+ *
+ * @author KhanhHuynh1402
+ */
+public class ButtonCodec {
+    public static final String PREFIX = "ipsa:";
+    private static final byte VERSION = 1;
+    private static final int MAC_LENGTH = 10;
+    private static final int KEY_LENGTH = 32;
+    private static final int MAX_CUSTOM_ID_LENGTH = 100;
+    private static final char[] ALPHABET =
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ.-:+=^!/*?&<>()[]{}@%$#".toCharArray();
+    private static final int[] ALPHABET_INDEX = new int[128];
+
+    static {
+        Arrays.fill(ALPHABET_INDEX, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            ALPHABET_INDEX[ALPHABET[i]] = i;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final long expireAfterSeconds;
+
+    /**
+     * Constructs a new ButtonCodec.
+     *
+     * @param keyFile            File holding the signing key, created with a random key if missing
+     * @param expireAfterSeconds Seconds a button stays valid
+     */
+    public ButtonCodec(File keyFile, long expireAfterSeconds) {
+        this.key = new SecretKeySpec(loadOrCreateKey(keyFile), "HmacSHA256");
+        this.expireAfterSeconds = expireAfterSeconds;
+    }
+
+    /**
+     * Encodes a button custom id for the player and IP.
+     *
+     * @param playerName The name of the player
+     * @param ip         The IP address literal
+     * @return The signed custom id
+     * @throws IllegalArgumentException if the IP is not an address literal or the id would be too long
+     */
+    public String encode(String playerName, String ip) {
+        byte[] address = parseAddress(ip);
+        byte[] name = playerName.getBytes(StandardCharsets.UTF_8);
+        long expiresAt = System.currentTimeMillis() / 1000 + expireAfterSeconds;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 1 + address.length + name.length + MAC_LENGTH);
+        buffer.put(VERSION);
+        buffer.putInt((int) expiresAt);
+        buffer.put((byte) address.length);
+        buffer.put(address);
+        buffer.put(name);
+        buffer.put(sign(buffer.array(), buffer.position()));
+
+        String customId = PREFIX + encodeBase85(buffer.array());
+        if (customId.length() > MAX_CUSTOM_ID_LENGTH) {
+            throw new IllegalArgumentException("Button id for " + playerName + " is too long");
+        }
+        return customId;
+    }
+
+    /**
+     * Decodes and verifies a button custom id.
+     *
+     * @param customId The custom id of the clicked button
+     * @return The {@link ButtonData}, or null if the id is not ours, forged or expired
+     */
+    public ButtonData decode(String customId) {
+        if (customId == null || !customId.startsWith(PREFIX)) {
+            return null;
+        }
+
+        byte[] bytes = decodeBase85(customId.substring(PREFIX.length()));
+        if (bytes == null || bytes.length < 1 + 4 + 1 + 4 + MAC_LENGTH || bytes[0] != VERSION) {
+            return null;
+        }
+
+        int signedLength = bytes.length - MAC_LENGTH;
+        byte[] mac = Arrays.copyOfRange(bytes, signedLength, bytes.length);
+        if (!MessageDigest.isEqual(mac, sign(bytes, signedLength))) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, signedLength);
+        buffer.get();
+        long expiresAt = buffer.getInt() & 0xFFFFFFFFL;
+        if (expiresAt < System.currentTimeMillis() / 1000) {
+            return null;
+        }
+
+        int addressLength = buffer.get();
+        if (addressLength != 4 && addressLength != 16 || buffer.remaining() < addressLength) {
+            return null;
+        }
+
+        byte[] address = new byte[addressLength];
+        buffer.get(address);
+        String playerName = new String(bytes, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+
+        IPAddressParser parser = new IPAddressParser();
+        parser.set(address);
+        return new ButtonData(playerName, parser.format(), expiresAt);
+    }
+
+    private byte[] sign(byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(data, 0, length);
+            return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] parseAddress(String ip) {
+        IPAddressParser parser = new IPAddressParser();
+        if (!parser.parse(ip)) {
+            throw new IllegalArgumentException("Not an IP address: " + ip);
+        }
+        return parser.toBytes();
+    }
+
+    private static byte[] loadOrCreateKey(File keyFile) {
+        try {
+            if (keyFile.exists()) {
+                byte[] key = Files.readAllBytes(keyFile.toPath());
+                if (key.length == KEY_LENGTH) {
+                    return key;
+                }
+            }
+
+            byte[] key = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes(key);
+            Files.write(keyFile.toPath(), key);
+            return key;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load button signing key " + keyFile.getName(), e);
+        }
+    }
+
+    /**
+     * Base-85 encodes the bytes: every 4 bytes become 5 characters, a trailing group of n bytes becomes n + 1.
+     */
+    static String encodeBase85(byte[] bytes) {
+        StringBuilder builder = new StringBuilder((bytes.length * 5 + 3) / 4);
+        char[] group = new char[5];
+
+        for (int i = 0; i < bytes.length; i += 4) {
+            int count = Math.min(4, bytes.length - i);
+            long value = 0;
+            for (int j = 0; j < 4; j++) {
+                value = (value << 8) | (j < count ? bytes[i + j] & 0xFF : 0);
+            }
+            for (int j = 4; j >= 0; j--) {
+                group[j] = ALPHABET[(int) (value % 85)];
+                value /= 85;
+            }
+            builder.append(group, 0, count + 1);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Reverses {@link #encodeBase85(byte[])}.
+     *
+     * @return The bytes, or null if the text is not valid base-85
+     */
+    static byte[] decodeBase85(String text) {
+        int fullGroups = text.length() / 5;
+        int tail = text.length() % 5;
+        if (tail == 1) {
+            return null;
+        }
+
+        byte[] bytes = new byte[fullGroups * 4 + (tail == 0 ? 0 : tail - 1)];
+
+        for (int i = 0, out = 0; i < text.length(); i += 5, out += 4) {
+            int count = Math.min(5, text.length() - i);
+            long value = 0;
+            for (int j = 0; j < 5; j++) {
+                int digit;
+                if (j < count) {
+                    char c = text.charAt(i + j);
+                    digit = c < 128 ? ALPHABET_INDEX[c] : -1;
+                    if (digit < 0) {
+                        return null;
+                    }
+                } else {
+                    // Pad with the highest digit so the truncated bytes round back to the originals
+                    digit = 84;
+                }
+                value = value * 85 + digit;
+            }
+            if (value > 0xFFFFFFFFL) {
+                return null;
+            }
+            for (int j = 0; j < count - 1; j++) {
+                bytes[out + j] = (byte) (value >>> (24 - 8 * j));
+            }
+        }
+
+        return bytes;
+    }
+}
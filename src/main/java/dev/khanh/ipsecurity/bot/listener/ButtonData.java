@@ -2,19 +2,25 @@ package dev.khanh.ipsecurity.bot.listener;
 
 import lombok.Getter;
 
-import java.util.UUID;
-
+/**
+ * Data carried by an "Add IP" button, decoded from its custom id.
+ *
+ * @author KhanhHuynh1402
+ */
 public class ButtonData {
-    @Getter
-    private final UUID buttonUUID;
     @Getter
     private final String playerName;
     @Getter
     private final String ip;
+    /**
+     * Expiry time in epoch seconds.
+     */
+    @Getter
+    private final long expiresAt;
 
-    public ButtonData(UUID buttonUUID, String playerName, String ip) {
-        this.buttonUUID = buttonUUID;
+    public ButtonData(String playerName, String ip, long expiresAt) {
         this.playerName = playerName;
         this.ip = ip;
+        this.expiresAt = expiresAt;
     }
 }
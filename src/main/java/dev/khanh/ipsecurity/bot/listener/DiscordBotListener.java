@@ -2,7 +2,9 @@ package dev.khanh.ipsecurity.bot.listener;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
 import dev.khanh.ipsecurity.bot.DiscordBot;
+import dev.khanh.ipsecurity.data.DataStorage;
 import dev.khanh.ipsecurity.file.Messages;
+import dev.khanh.ipsecurity.ip.IPAllowlist;
 import lombok.Getter;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -11,12 +13,12 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Listener class for Discord bot interactions with the server plugin.
@@ -28,8 +30,7 @@ public class DiscordBotListener extends ListenerAdapter {
     @Getter
     private final DiscordBot bot;
     private final IPSecurityPlugin plugin;
-    private final Pattern IP_PATTERN = Pattern.compile("^(([0-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-5])(\\.(?!$)|$)){4}$");
-    private final Map<String, ButtonData> cachedButtons = new HashMap<>();
+    private CompletableFuture<?> pendingUpdate = CompletableFuture.completedFuture(null);
 
 
     /**
@@ -79,6 +80,10 @@ public class DiscordBotListener extends ListenerAdapter {
             handleSetCommand(event, messages);
         }
 
+        if (event.getSubcommandName().equals("add")){
+            handleAddCommand(event, messages);
+        }
+
         if (event.getSubcommandName().equals("remove")){
             handleRemoveCommand(event, messages);
         }
@@ -96,7 +101,8 @@ public class DiscordBotListener extends ListenerAdapter {
 
         Messages messages = plugin.getMessages();
 
-        ButtonData buttonData = cachedButtons.get(button.getId());
+        // Forged, expired or foreign buttons fail to decode
+        ButtonData buttonData = bot.getButtonCodec().decode(button.getId());
 
         if (buttonData == null) {
             return;
@@ -113,9 +119,10 @@ public class DiscordBotListener extends ListenerAdapter {
 
         event.deferReply(false).queue();
 
-        plugin.getDataStorage().setPlayerIP(buttonData.getPlayerName(), buttonData.getIp()).thenRunAsync(() -> {
-            event.getHook().sendMessageEmbeds(messages.getSetIpSuccessfulMessageEmbed(player, ip)).queue();
-        }).exceptionally(throwable -> {
+        // The button allows the new address next to the existing ones, for staff with changing addresses
+        updateAllowlist(player, allowlist -> allowlist.with(ip)).thenRunAsync(() -> {
+            event.getHook().sendMessageEmbeds(messages.getAddIpSuccessfulMessageEmbed(player, ip)).queue();
+        }, plugin.getStorageExecutor()).exceptionally(throwable -> {
             event.getHook().sendMessageEmbeds(messages.getSetIpFailedMessageEmbed(player, ip)).queue();
             throwable.printStackTrace();
             throw new RuntimeException(throwable);
@@ -123,7 +130,7 @@ public class DiscordBotListener extends ListenerAdapter {
     }
 
     /**
-     * Handle the remove command
+     * Handle the set command, which replaces the player's allowlist
      * @param event The {@link SlashCommandInteractionEvent}
      * @param messages The {@link Messages} plugin messages
      */
@@ -134,20 +141,54 @@ public class DiscordBotListener extends ListenerAdapter {
             return;
         }
 
-        if (!isValidIP(Objects.requireNonNull(event.getOption("ip")).getAsString())){
+        IPAllowlist allowlist = parseAllowlist(Objects.requireNonNull(event.getOption("ip")).getAsString());
+        if (allowlist == null){
             event.deferReply(true).queue();
             event.getHook().sendMessageEmbeds(messages.getInvalidIpFormatMessageEmbed()).queue();
             return;
         }
 
         String player = Objects.requireNonNull(event.getOption("player")).getAsString();
-        String ip = Objects.requireNonNull(event.getOption("ip")).getAsString();
+        String ip = allowlist.toString();
 
         event.deferReply(false).queue();
 
-        plugin.getDataStorage().setPlayerIP(player, ip).thenRunAsync(() -> {
+        runUpdate(() -> plugin.getDataStorage().setPlayerIP(player, ip)).thenRunAsync(() -> {
             event.getHook().sendMessageEmbeds(messages.getSetIpSuccessfulMessageEmbed(player, ip)).queue();
-        }).exceptionally(throwable -> {
+        }, plugin.getStorageExecutor()).exceptionally(throwable -> {
+            event.getHook().sendMessageEmbeds(messages.getSetIpFailedMessageEmbed(player, ip)).queue();
+            throwable.printStackTrace();
+            throw new RuntimeException(throwable);
+        });
+    }
+
+    /**
+     * Handle the add command, which adds one IP address or CIDR range to the player's allowlist
+     * @param event The {@link SlashCommandInteractionEvent}
+     * @param messages The {@link Messages} plugin messages
+     */
+    private void handleAddCommand(SlashCommandInteractionEvent event, Messages messages) {
+        if (event.getOptions().size() != 2){
+            event.deferReply(true).queue();
+            event.getHook().sendMessageEmbeds(messages.getInvalidSyntaxMessageEmbed()).queue();
+            return;
+        }
+
+        IPAllowlist entry = parseAllowlist(Objects.requireNonNull(event.getOption("ip")).getAsString());
+        if (entry == null || entry.size() != 1){
+            event.deferReply(true).queue();
+            event.getHook().sendMessageEmbeds(messages.getInvalidIpFormatMessageEmbed()).queue();
+            return;
+        }
+
+        String ip = entry.toString();
+        String player = Objects.requireNonNull(event.getOption("player")).getAsString();
+
+        event.deferReply(false).queue();
+
+        updateAllowlist(player, allowlist -> allowlist.with(ip)).thenRunAsync(() -> {
+            event.getHook().sendMessageEmbeds(messages.getAddIpSuccessfulMessageEmbed(player, ip)).queue();
+        }, plugin.getStorageExecutor()).exceptionally(throwable -> {
             event.getHook().sendMessageEmbeds(messages.getSetIpFailedMessageEmbed(player, ip)).queue();
             throwable.printStackTrace();
             throw new RuntimeException(throwable);
@@ -155,11 +196,16 @@ public class DiscordBotListener extends ListenerAdapter {
     }
 
     /**
-     * Handle the remove command
+     * Handle the remove command, which removes one entry when an IP is given and the whole allowlist otherwise
      * @param event The {@link SlashCommandInteractionEvent}
      * @param messages The {@link Messages} plugin messages
      */
     private void handleRemoveCommand(SlashCommandInteractionEvent event, Messages messages) {
+        if (event.getOptions().size() == 2) {
+            handleRemoveEntryCommand(event, messages);
+            return;
+        }
+
         if (event.getOptions().size() != 1) {
             event.deferReply(false).queue();
             event.getHook().sendMessageEmbeds(messages.getInvalidSyntaxMessageEmbed()).queue();
@@ -170,13 +216,39 @@ public class DiscordBotListener extends ListenerAdapter {
 
         event.deferReply(false).queue();
 
-        plugin.getDataStorage().removePlayerIP(player).thenAcceptAsync(flag -> {
+        runUpdate(() -> plugin.getDataStorage().removePlayerIP(player)).thenAcceptAsync(flag -> {
             if (flag) {
                 event.getHook().sendMessageEmbeds(messages.getRemoveIpSuccessfulMessageEmbed(player)).queue();
             } else {
                 event.getHook().sendMessageEmbeds(messages.getNotFoundPlayerMessageEmbed(player)).queue();
             }
-        }).exceptionally(throwable -> {
+        }, plugin.getStorageExecutor()).exceptionally(throwable -> {
+            event.getHook().sendMessageEmbeds(messages.getRemoveIpFailedMessageEmbed(player)).queue();
+            throwable.printStackTrace();
+            throw new RuntimeException(throwable);
+        });
+    }
+
+    private void handleRemoveEntryCommand(SlashCommandInteractionEvent event, Messages messages) {
+        IPAllowlist entry = parseAllowlist(Objects.requireNonNull(event.getOption("ip")).getAsString());
+        if (entry == null || entry.size() != 1){
+            event.deferReply(true).queue();
+            event.getHook().sendMessageEmbeds(messages.getInvalidIpFormatMessageEmbed()).queue();
+            return;
+        }
+
+        String ip = entry.toString();
+        String player = Objects.requireNonNull(event.getOption("player")).getAsString();
+
+        event.deferReply(false).queue();
+
+        updateAllowlist(player, allowlist -> allowlist.without(ip)).thenAcceptAsync(flag -> {
+            if (flag) {
+                event.getHook().sendMessageEmbeds(messages.getRemoveEntrySuccessfulMessageEmbed(player, ip)).queue();
+            } else {
+                event.getHook().sendMessageEmbeds(messages.getNotFoundEntryMessageEmbed(player, ip)).queue();
+            }
+        }, plugin.getStorageExecutor()).exceptionally(throwable -> {
             event.getHook().sendMessageEmbeds(messages.getRemoveIpFailedMessageEmbed(player)).queue();
             throwable.printStackTrace();
             throw new RuntimeException(throwable);
@@ -184,21 +256,58 @@ public class DiscordBotListener extends ListenerAdapter {
     }
 
     /**
-     * Checks if the provided IP address is valid.
+     * Applies a change to a player's stored allowlist, removing the player once nothing is left.
      *
-     * @param ip The IP address to validate.
-     * @return true if the IP address is valid, otherwise false.
+     * @param player The name of the player.
+     * @param change The change to apply.
+     * @return A future completed with whether the allowlist changed.
      */
-    private boolean isValidIP(String ip) {
-        Matcher matcher = IP_PATTERN.matcher(ip);
-        return matcher.matches();
+    private CompletableFuture<Boolean> updateAllowlist(String player, UnaryOperator<IPAllowlist> change) {
+        DataStorage storage = plugin.getDataStorage();
+
+        return runUpdate(() -> storage.getPlayerIP(player).thenCompose(stored -> {
+            IPAllowlist current = IPAllowlist.of(stored);
+            IPAllowlist updated = change.apply(current);
+
+            if (updated == current) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            CompletableFuture<?> write = updated.isEmpty()
+                    ? storage.removePlayerIP(player)
+                    : storage.setPlayerIP(player, updated.toString());
+            return write.thenApply(ignored -> true);
+        }));
     }
 
     /**
-     * Register the button handle event
-     * @param buttonData the {@link ButtonData}
+     * Runs allowlist updates one after another, so two staff members changing the same player
+     * at once cannot overwrite each other's change.
+     *
+     * @param update Starts the update.
+     * @return A future completed once the update has finished.
      */
-    public void registerButtonListener(ButtonData buttonData) {
-        cachedButtons.put(buttonData.getButtonUUID().toString(), buttonData);
+    private synchronized <T> CompletableFuture<T> runUpdate(Supplier<CompletableFuture<T>> update) {
+        CompletableFuture<T> future = pendingUpdate
+                .handle((ignored, throwable) -> null)
+                .thenCompose(ignored -> update.get());
+        pendingUpdate = future;
+        return future;
+    }
+
+    /**
+     * Parses allowlist entries typed in a command.
+     *
+     * @param text The IP addresses or CIDR ranges.
+     * @return The allowlist, or null if an entry is invalid or nothing was given.
+     */
+    @Nullable
+    private static IPAllowlist parseAllowlist(String text) {
+        try {
+            IPAllowlist allowlist = IPAllowlist.parse(text);
+            return allowlist.isEmpty() ? null : allowlist;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 }
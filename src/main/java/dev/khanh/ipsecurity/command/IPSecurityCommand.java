@@ -1,6 +1,11 @@
 package dev.khanh.ipsecurity.command;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.bot.DiscordBot;
+import dev.khanh.ipsecurity.bot.NotificationQueue;
+import dev.khanh.ipsecurity.data.StorageExecutor;
+import dev.khanh.ipsecurity.metrics.LatencyHistogram;
+import dev.khanh.ipsecurity.metrics.PluginMetrics;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -9,8 +14,11 @@ import org.bukkit.command.TabCompleter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Represents the command executor and tab completer for IPSecurity plugin commands.
@@ -19,6 +27,8 @@ import java.util.List;
  * @author KhanhHuynh1402
  */
 public class IPSecurityCommand implements CommandExecutor, TabCompleter {
+    private static final List<String> SUBCOMMANDS = Arrays.asList("reload", "stats");
+    private static final List<String> STORAGE_OPERATIONS = Arrays.asList("get", "get_batch", "set", "remove");
     private final IPSecurityPlugin plugin;
 
     /**
@@ -55,9 +65,76 @@ public class IPSecurityCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            sendStats(sender);
+            return true;
+        }
+
         return false;
     }
 
+    /**
+     * Sends a summary of the plugin metrics.
+     *
+     * @param sender The command sender.
+     */
+    private void sendStats(CommandSender sender) {
+        PluginMetrics metrics = plugin.getMetrics();
+        String backend = plugin.getSettings().getDataStorageType().name().toLowerCase(Locale.ROOT);
+
+        sender.sendMessage(ChatColor.RED.toString() + ChatColor.BOLD + "IPSecurity Stats");
+
+        sender.sendMessage(String.format("Sweep: %s%d%s players checked, %s%d%s skipped unchanged, slice %s, full sweep %s",
+                ChatColor.YELLOW, metrics.getPlayersChecked().sum(), ChatColor.RESET,
+                ChatColor.YELLOW, metrics.getPlayersSkipped().sum(), ChatColor.RESET,
+                formatLatency(metrics.getSweepSliceLatency()), formatLatency(metrics.getSweepLatency())));
+
+        for (String operation : STORAGE_OPERATIONS) {
+            LatencyHistogram latency = metrics.getStorageLatency(backend, operation);
+            sender.sendMessage(String.format("Storage %s %s: %s%d%s ops, %s",
+                    backend, operation, ChatColor.YELLOW, latency.getCount(), ChatColor.RESET, formatLatency(latency)));
+        }
+
+        StorageExecutor executor = plugin.getStorageExecutor();
+        sender.sendMessage(String.format("Storage executor: %s%d%s queued, %d active, %d rejected",
+                ChatColor.YELLOW, executor.getQueueDepth(), ChatColor.RESET, executor.getActiveCount(), executor.getRejectedCount()));
+
+        double hitRatio = metrics.getCacheHitRatio(plugin);
+        sender.sendMessage("Cache hit ratio: " + ChatColor.YELLOW
+                + (Double.isNaN(hitRatio) ? "N/a" : String.format("%.1f%%", hitRatio * 100)));
+
+        DiscordBot bot = plugin.getDiscordBot();
+        if (bot != null && bot.getNotificationQueue() != null) {
+            NotificationQueue queue = bot.getNotificationQueue();
+            sender.sendMessage(String.format("Discord: %s%d%s queued, %d sent, %d merged, %d dropped, send %s",
+                    ChatColor.YELLOW, queue.getQueueDepth(), ChatColor.RESET, queue.getSentMessageCount(),
+                    queue.getDuplicateCount(), queue.getDroppedCount(), formatLatency(metrics.getNotificationSendLatency())));
+
+            if (queue.getSpool() != null) {
+                sender.sendMessage(String.format("Discord spool: %s%d%s notifications, %.1f KB, circuit %s",
+                        ChatColor.YELLOW, queue.getSpool().getPendingRecords(), ChatColor.RESET,
+                        queue.getSpool().getPendingBytes() / 1024D, queue.getCircuitBreaker().getState()));
+            }
+        }
+
+        sender.sendMessage(String.format("Kicks: %s%d%s on check, %s%d%s at pre-login",
+                ChatColor.YELLOW, metrics.getCheckKicks().sum(), ChatColor.RESET,
+                ChatColor.YELLOW, metrics.getPreLoginKicks().sum(), ChatColor.RESET));
+
+        sender.sendMessage(String.format("Server thread time: %s%.1f ms",
+                ChatColor.YELLOW, metrics.getMainThreadNanos().sum() / 1_000_000D));
+    }
+
+    private static String formatLatency(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "no samples";
+        }
+        return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                histogram.getQuantile(0.5) / 1_000_000D,
+                histogram.getQuantile(0.99) / 1_000_000D,
+                histogram.getMax() / 1_000_000D);
+    }
+
     /**
      * Provides tab completion for IPSecurity commands.
      *
@@ -70,8 +147,14 @@ public class IPSecurityCommand implements CommandExecutor, TabCompleter {
     @Nullable
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
-        if (args.length == 1 && "reload".startsWith(args[0])) {
-            return Collections.singletonList("reload");
+        if (args.length == 1) {
+            List<String> completions = new ArrayList<>();
+            for (String subcommand : SUBCOMMANDS) {
+                if (subcommand.startsWith(args[0].toLowerCase(Locale.ROOT))) {
+                    completions.add(subcommand);
+                }
+            }
+            return completions;
         }
         return Collections.emptyList();
     }
@@ -0,0 +1,232 @@
+package dev.khanh.ipsecurity.data;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through/write-through cache in front of another {@link DataStorage}.
+ * Cached lookups are answered with an already completed future, so they never
+ * touch the backend or switch threads. Once full, the least recently used player is evicted.
+ *
+ * @author KhanhHuynh1402
+ */
+public class CachingDataStorage implements DataStorage {
+    @Getter
+    private final DataStorage delegate;
+    @Getter
+    private final int maximumSize;
+    @Getter
+    private final long expireAfterNanos;
+    /**
+     * Access-ordered, so the eldest entry is the least recently used one. Guarded by itself.
+     */
+    private final LinkedHashMap<String, Entry> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * Bumped on every write so that a lookup started before the write does not
+     * put its stale result back into the cache.
+     */
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    /**
+     * Constructs a new CachingDataStorage.
+     *
+     * @param delegate      The backing {@link DataStorage}
+     * @param maximumSize   Maximum number of cached players
+     * @param expireSeconds Seconds after which an entry is reloaded from the backend, 0 to never expire
+     */
+    public CachingDataStorage(DataStorage delegate, int maximumSize, long expireSeconds) {
+        this.delegate = delegate;
+        this.maximumSize = Math.max(1, maximumSize);
+        this.expireAfterNanos = expireSeconds > 0 ? TimeUnit.SECONDS.toNanos(expireSeconds) : 0;
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingDataStorage.this.maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
+        writeGeneration.incrementAndGet();
+        remove(playerName);
+
+        return delegate.setPlayerIP(playerName, ip).thenRun(() -> {
+            writeGeneration.incrementAndGet();
+            put(playerName, ip);
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerIP(String playerName) {
+        Entry entry;
+        synchronized (cache) {
+            entry = getEntry(playerName, System.nanoTime());
+        }
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(entry.ip);
+        }
+
+        misses.incrementAndGet();
+
+        long generation = writeGeneration.get();
+        return delegate.getPlayerIP(playerName).thenApply(ip -> {
+            if (writeGeneration.get() == generation) {
+                put(playerName, ip);
+            }
+            return ip;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        Map<String, String> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.nanoTime();
+
+        synchronized (cache) {
+            for (String playerName : playerNames) {
+                Entry entry = getEntry(playerName, now);
+
+                if (entry != null) {
+                    if (entry.ip != null) {
+                        result.put(playerName, entry.ip);
+                    }
+                } else {
+                    missing.add(playerName);
+                }
+            }
+        }
+
+        hits.addAndGet(playerNames.size() - missing.size());
+        misses.addAndGet(missing.size());
+
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        long generation = writeGeneration.get();
+        return delegate.getPlayerIPs(missing).thenApply(loaded -> {
+            boolean cacheable = writeGeneration.get() == generation;
+            long loadedAt = System.nanoTime();
+
+            for (String playerName : missing) {
+                String ip = loaded.get(playerName);
+                if (ip != null) {
+                    result.put(playerName, ip);
+                }
+            }
+
+            if (cacheable) {
+                synchronized (cache) {
+                    for (String playerName : missing) {
+                        // A null IP is cached too, so unregistered staff do not hit the backend every sweep
+                        cache.put(playerName, new Entry(loaded.get(playerName), loadedAt));
+                    }
+                }
+            }
+
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
+        writeGeneration.incrementAndGet();
+        remove(playerName);
+
+        return delegate.removePlayerIP(playerName).thenApply(flag -> {
+            writeGeneration.incrementAndGet();
+            put(playerName, null);
+            return flag;
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        delegate.shutdown();
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public void invalidateAll() {
+        writeGeneration.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return The number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that had to go to the backend
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of players currently cached
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private void put(String playerName, String ip) {
+        synchronized (cache) {
+            // A null IP is cached too, so unregistered staff do not hit the backend every sweep
+            cache.put(playerName, new Entry(ip, System.nanoTime()));
+        }
+    }
+
+    private void remove(String playerName) {
+        synchronized (cache) {
+            cache.remove(playerName);
+        }
+    }
+
+    /**
+     * Gets a live entry and marks it as used. Must be called holding the cache lock.
+     */
+    private Entry getEntry(String playerName, long now) {
+        Entry entry = cache.get(playerName);
+        if (entry != null && isExpired(entry, now)) {
+            cache.remove(playerName);
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return expireAfterNanos > 0 && now - entry.loadedAt >= expireAfterNanos;
+    }
+
+    private static final class Entry {
+        private final String ip;
+        private final long loadedAt;
+
+        private Entry(String ip, long loadedAt) {
+            this.ip = ip;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
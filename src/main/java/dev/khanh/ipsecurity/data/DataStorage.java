@@ -1,19 +1,23 @@
 package dev.khanh.ipsecurity.data;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for handling data storage
+ * The value stored for a player is the stored form of their {@link dev.khanh.ipsecurity.ip.IPAllowlist},
+ * a single IP address or several addresses and CIDR ranges separated by commas.
  *
  * @author KhanhHuynh1402
  */
 public interface DataStorage {
 
     /**
-     * Sets the IP address associated with the specified player.
+     * Sets the IP addresses allowed for the specified player.
      *
      * @param playerName The name of player
-     * @param ip     The IP address to set
+     * @param ip         The stored form of the allowlist to set
      * @return A CompletableFuture representing the asynchronous operation result
      */
     CompletableFuture<Void> setPlayerIP(String playerName, String ip);
@@ -26,6 +30,15 @@ public interface DataStorage {
      */
     CompletableFuture<String> getPlayerIP(String playerName);
 
+    /**
+     * Retrieves the IP addresses associated with the specified players in a single lookup.
+     *
+     * @param playerNames The names of players
+     * @return A CompletableFuture representing the asynchronous operation result, containing a map of player name
+     *         to IP address. Players without a stored IP address are absent from the map
+     */
+    CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames);
+
     /**
      * Removes the IP address associated with the specified player.
      *
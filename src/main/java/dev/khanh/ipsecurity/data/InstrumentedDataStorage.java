@@ -0,0 +1,78 @@
+package dev.khanh.ipsecurity.data;
+
+import dev.khanh.ipsecurity.metrics.LatencyHistogram;
+import dev.khanh.ipsecurity.metrics.PluginMetrics;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the latency of every operation of another {@link DataStorage}, from the call
+ * until its future completes.
+ *
+ * @author KhanhHuynh1402
+ */
+public class InstrumentedDataStorage implements DataStorage {
+    @Getter
+    private final DataStorage delegate;
+    private final LatencyHistogram setLatency;
+    private final LatencyHistogram getLatency;
+    private final LatencyHistogram getBatchLatency;
+    private final LatencyHistogram removeLatency;
+
+    /**
+     * Constructs a new InstrumentedDataStorage.
+     *
+     * @param delegate The measured {@link DataStorage}
+     * @param metrics  The {@link PluginMetrics} to record into
+     * @param backend  The backend name used as metric label
+     */
+    public InstrumentedDataStorage(DataStorage delegate, PluginMetrics metrics, String backend) {
+        this.delegate = delegate;
+        this.setLatency = metrics.getStorageLatency(backend, "set");
+        this.getLatency = metrics.getStorageLatency(backend, "get");
+        this.getBatchLatency = metrics.getStorageLatency(backend, "get_batch");
+        this.removeLatency = metrics.getStorageLatency(backend, "remove");
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
+        long start = System.nanoTime();
+        return time(setLatency, delegate.setPlayerIP(playerName, ip), start);
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerIP(String playerName) {
+        long start = System.nanoTime();
+        return time(getLatency, delegate.getPlayerIP(playerName), start);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        long start = System.nanoTime();
+        return time(getBatchLatency, delegate.getPlayerIPs(playerNames), start);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
+        long start = System.nanoTime();
+        return time(removeLatency, delegate.removePlayerIP(playerName), start);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private static <T> CompletableFuture<T> time(LatencyHistogram histogram, CompletableFuture<T> future, long start) {
+        // Already completed futures are recorded inline, without a dependent stage
+        if (future.isDone()) {
+            histogram.recordSince(start);
+            return future;
+        }
+        future.whenComplete((result, throwable) -> histogram.recordSince(start));
+        return future;
+    }
+}
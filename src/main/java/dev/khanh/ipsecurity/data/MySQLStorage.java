@@ -3,13 +3,17 @@ package dev.khanh.ipsecurity.data;
 import com.google.common.base.Preconditions;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.ip.IPAllowlist;
 import dev.khanh.ipsecurity.util.PluginLogger;
 import lombok.Getter;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.sql.*;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of {@link DataStorage} interface for MySQL database.
@@ -17,6 +21,11 @@ import java.util.concurrent.CompletableFuture;
  * @author KhanhHuynh1402
  */
 public class MySQLStorage implements DataStorage {
+    /**
+     * Sizes of the prepared IN clauses. A lookup uses the smallest one that fits, so the
+     * statement cache holds a handful of statements instead of one per player count.
+     */
+    private static final int[] BATCH_SIZES = {1, 8, 32, 128, 500};
     @Getter
     private final HikariDataSource dataSource;
     @Getter
@@ -39,6 +48,14 @@ public class MySQLStorage implements DataStorage {
     private final int minimumIdle;
     @Getter
     private final int connectionTimeout;
+    private final StorageExecutor executor;
+    private final String selectSql;
+    private final String upsertSql;
+    private final String deleteSql;
+    private final String[] batchSelectSql;
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong acquireNanos = new AtomicLong();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
 
 
     /**
@@ -47,6 +64,8 @@ public class MySQLStorage implements DataStorage {
      * @param plugin The {@link IPSecurityPlugin} instance
      */
     public MySQLStorage(IPSecurityPlugin plugin) {
+        executor = plugin.getStorageExecutor();
+
         ConfigurationSection section = plugin.getSettings().getConfig()
                 .getConfigurationSection("storage.mysql-properties");
         Preconditions.checkNotNull(section, "[config.yml] storage.mysql-properties is null");
@@ -62,10 +81,29 @@ public class MySQLStorage implements DataStorage {
         minimumIdle = section.getInt("pool.minimum-idle");
         connectionTimeout = section.getInt("pool.connection-timeout");
 
+        selectSql = String.format("SELECT IP FROM %s WHERE PLAYER_NAME = ?", table);
+        upsertSql = String.format("INSERT INTO %s (PLAYER_NAME, IP) VALUES (?, ?) ON DUPLICATE KEY UPDATE IP = VALUES(IP)", table);
+        deleteSql = String.format("DELETE FROM %s WHERE PLAYER_NAME = ?", table);
+        batchSelectSql = new String[BATCH_SIZES.length];
+        for (int i = 0; i < BATCH_SIZES.length; i++) {
+            batchSelectSql[i] = String.format("SELECT PLAYER_NAME, IP FROM %s WHERE PLAYER_NAME IN (%s)",
+                    table, String.join(",", Collections.nCopies(BATCH_SIZES[i], "?")));
+        }
+
         HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("IPSecurity-MySQL");
         hikariConfig.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s%s", host, port, database, parameters));
         hikariConfig.setUsername(username);
         hikariConfig.setPassword(password);
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(minimumIdle);
+        hikariConfig.setConnectionTimeout(connectionTimeout);
+
+        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
 
         PluginLogger.info("Connecting to MYSQL server...");
         dataSource = new HikariDataSource(hikariConfig);
@@ -73,17 +111,15 @@ public class MySQLStorage implements DataStorage {
 
         createTable();
     }
+
     @Override
     public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
-        return CompletableFuture.runAsync(() -> {
-            try (Connection connection = dataSource.getConnection()){
-
-                String sql = String.format("INSERT INTO %s (PLAYER_NAME, IP) VALUES (?, ?) ON DUPLICATE KEY UPDATE IP = ?", table);
-                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        return executor.run(() -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(upsertSql)) {
 
                 preparedStatement.setString(1, playerName);
                 preparedStatement.setString(2, ip);
-                preparedStatement.setString(3, ip);
 
                 preparedStatement.executeUpdate();
 
@@ -95,39 +131,88 @@ public class MySQLStorage implements DataStorage {
 
     @Override
     public CompletableFuture<String> getPlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection connection = dataSource.getConnection()){
-
-                String sql = String.format("SELECT * FROM %s WHERE PLAYER_NAME = ?", table);
-                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        return executor.supply(() -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(selectSql)) {
 
                 preparedStatement.setString(1, playerName);
 
-                ResultSet resultSet = preparedStatement.executeQuery();
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getString(1) : null;
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        return executor.supply(() -> {
+            Map<String, String> result = new HashMap<>();
+            List<String> names = new ArrayList<>(new LinkedHashSet<>(playerNames));
+
+            if (names.isEmpty()) {
+                return result;
+            }
+
+            // The default collation compares names case-insensitively, so the stored name may differ in case
+            Map<String, String> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+            try (Connection connection = getConnection()) {
+
+                int from = 0;
+                while (from < names.size()) {
+                    int bucket = getBatchBucket(names.size() - from);
+                    int size = BATCH_SIZES[bucket];
+                    int to = Math.min(from + size, names.size());
 
-                return resultSet.next() ? resultSet.getString("IP") : null;
+                    try (PreparedStatement preparedStatement = connection.prepareStatement(batchSelectSql[bucket])) {
+
+                        // Unused slots repeat the last name so only a few distinct statements are ever prepared
+                        for (int i = 0; i < size; i++) {
+                            preparedStatement.setString(i + 1, names.get(Math.min(from + i, to - 1)));
+                        }
+
+                        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                            while (resultSet.next()) {
+                                found.put(resultSet.getString(1), resultSet.getString(2));
+                            }
+                        }
+                    }
+
+                    from = to;
+                }
 
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
+
+            // Key the result by the requested names, like getPlayerIP matches them
+            for (String name : names) {
+                String ip = found.get(name);
+                if (ip != null) {
+                    result.put(name, ip);
+                }
+            }
+            return result;
         });
     }
 
     @Override
     public CompletableFuture<Boolean> removePlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-           try (Connection connection = dataSource.getConnection()){
-
-               String sql = String.format("DELETE FROM %s WHERE PLAYER_NAME = ?", table);
-               PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        return executor.supply(() -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(deleteSql)) {
 
-               preparedStatement.setString(1, playerName);
+                preparedStatement.setString(1, playerName);
 
-               return preparedStatement.executeUpdate() > 0;
+                return preparedStatement.executeUpdate() > 0;
 
-           } catch (SQLException e) {
-               throw new RuntimeException(e);
-           }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
         });
     }
 
@@ -142,15 +227,114 @@ public class MySQLStorage implements DataStorage {
         }
     }
 
+    /**
+     * Takes a snapshot of the connection pool state.
+     *
+     * @return The current {@link PoolStats}
+     */
+    public PoolStats getPoolStats() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        long acquires = acquireCount.get();
+
+        return new PoolStats(
+                pool == null ? 0 : pool.getActiveConnections(),
+                pool == null ? 0 : pool.getIdleConnections(),
+                pool == null ? 0 : pool.getThreadsAwaitingConnection(),
+                pool == null ? 0 : pool.getTotalConnections(),
+                acquires == 0 ? 0 : acquireNanos.get() / acquires,
+                maxAcquireNanos.get()
+        );
+    }
+
+    private Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        long elapsed = System.nanoTime() - start;
+
+        acquireCount.incrementAndGet();
+        acquireNanos.addAndGet(elapsed);
+        maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+
+        return connection;
+    }
+
+    private static int getBatchBucket(int remaining) {
+        for (int i = 0; i < BATCH_SIZES.length; i++) {
+            if (remaining <= BATCH_SIZES[i]) {
+                return i;
+            }
+        }
+        return BATCH_SIZES.length - 1;
+    }
+
     private void createTable() {
-        try (Connection connection = dataSource.getConnection()) {
-            Statement statement = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
             statement.executeUpdate(String.format(
-                    "CREATE TABLE IF NOT EXISTS %s (PLAYER_NAME VARCHAR(64) PRIMARY KEY, IP VARCHAR(64) NOT NULL)",
-                    table
+                    "CREATE TABLE IF NOT EXISTS %s (PLAYER_NAME VARCHAR(64) PRIMARY KEY, IP VARCHAR(%d) NOT NULL)",
+                    table, IPAllowlist.MAXIMUM_LENGTH
             ));
+
+            migrateTable(connection);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Widens the IP column of tables created before a player could have several allowed entries.
+     *
+     * @param connection The connection to migrate with
+     */
+    private void migrateTable(Connection connection) throws SQLException {
+        long columnLength;
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+                "SELECT CHARACTER_MAXIMUM_LENGTH FROM information_schema.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = 'IP'")) {
+
+            preparedStatement.setString(1, table);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return;
+                }
+                columnLength = resultSet.getLong(1);
+            }
+        }
+
+        if (columnLength >= IPAllowlist.MAXIMUM_LENGTH) {
+            return;
+        }
+
+        PluginLogger.info("Migrating table " + table + " to store IP allowlists...");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(String.format("ALTER TABLE %s MODIFY IP VARCHAR(%d) NOT NULL",
+                    table, IPAllowlist.MAXIMUM_LENGTH));
+        }
+        PluginLogger.info("Successfully migrated table " + table);
+    }
+
+    /**
+     * Snapshot of the MySQL connection pool.
+     */
+    @Getter
+    public static class PoolStats {
+        private final int activeConnections;
+        private final int idleConnections;
+        private final int threadsAwaitingConnection;
+        private final int totalConnections;
+        private final long averageAcquireNanos;
+        private final long maxAcquireNanos;
+
+        private PoolStats(int activeConnections, int idleConnections, int threadsAwaitingConnection,
+                          int totalConnections, long averageAcquireNanos, long maxAcquireNanos) {
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.threadsAwaitingConnection = threadsAwaitingConnection;
+            this.totalConnections = totalConnections;
+            this.averageAcquireNanos = averageAcquireNanos;
+            this.maxAcquireNanos = maxAcquireNanos;
+        }
+    }
 }
@@ -1,21 +1,52 @@
 package dev.khanh.ipsecurity.data;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.ip.IPAllowlist;
 import dev.khanh.ipsecurity.util.PluginLogger;
 import lombok.Getter;
 
 import java.io.File;
 import java.sql.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implementation of {@link DataStorage} interface for SQLite database.
+ * The database runs in WAL mode with one dedicated writer thread that group-commits queued
+ * writes in a single transaction, while lookups use a small pool of read-only connections.
+ * Write futures are completed on the storage executor, so callbacks never hold up the next commit.
  *
  * @author KhanhHuynh1402
  */
 public class SQLiteStorage implements DataStorage {
+    /**
+     * Maximum number of names bound in one IN clause, below SQLite's default host parameter limit.
+     */
+    private static final int BATCH_SIZE = 500;
+    /**
+     * Maximum number of queued writes committed in one transaction.
+     */
+    private static final int MAX_WRITES_PER_COMMIT = 256;
+    /**
+     * Schema version recorded in {@code PRAGMA user_version}.
+     */
+    private static final int SCHEMA_VERSION = 1;
+    private static final String SELECT_SQL = "SELECT IP FROM IPSecurity WHERE PLAYER_NAME = ?";
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO IPSecurity (PLAYER_NAME, IP) VALUES (?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM IPSecurity WHERE PLAYER_NAME = ?";
+
     @Getter
-    private final Connection connection;
+    private final Connection writeConnection;
+    private final BlockingQueue<Connection> readConnections;
+    private final List<Connection> allReadConnections = new ArrayList<>();
+    private final BlockingQueue<WriteTask> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final StorageExecutor executor;
+    /**
+     * Held while checking {@link #running} and queueing a write, so no write is queued after the writer exits.
+     */
+    private final Object writeLock = new Object();
+    private volatile boolean running = true;
 
     /**
      * Constructor for SQLiteStorage.
@@ -24,76 +55,280 @@ public class SQLiteStorage implements DataStorage {
      */
     public SQLiteStorage(IPSecurityPlugin plugin) {
         File file = new File(plugin.getDataFolder(), "database.db");
+        executor = plugin.getStorageExecutor();
 
         String url = "jdbc:sqlite:" + file.getPath();
 
+        int readConnectionCount = plugin.getSettings().getSqliteReadConnections();
+
         try {
 
             PluginLogger.info("Initialize connection to SQLite.");
-            connection = DriverManager.getConnection(url);
-            PluginLogger.info("Successfully connected to SQLite");
+            writeConnection = DriverManager.getConnection(url);
+            applyPragmas(writeConnection);
 
             createTable();
 
+            readConnections = new ArrayBlockingQueue<>(readConnectionCount);
+            for (int i = 0; i < readConnectionCount; i++) {
+                Connection connection = DriverManager.getConnection(url);
+                applyPragmas(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA query_only = true");
+                }
+                allReadConnections.add(connection);
+                readConnections.add(connection);
+            }
+
+            PluginLogger.info("Successfully connected to SQLite");
+
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+
+        writerThread = new Thread(this::runWriter, "IPSecurity-SQLite-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
+
     @Override
     public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
-        return CompletableFuture.runAsync(() -> {
-            String sql = "INSERT OR REPLACE INTO IPSecurity (PLAYER_NAME, IP) VALUES (?, ?)";
-
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+        return submitWrite(connection -> {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(UPSERT_SQL)) {
 
                 preparedStatement.setString(1, playerName);
                 preparedStatement.setString(2, ip);
 
                 preparedStatement.executeUpdate();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
             }
+            return null;
         });
     }
 
     @Override
     public CompletableFuture<String> getPlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM IPSecurity WHERE PLAYER_NAME = ?";
-
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+        return submitRead(connection -> {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_SQL)) {
 
                 preparedStatement.setString(1, playerName);
 
-                ResultSet resultSet = preparedStatement.executeQuery();
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getString(1) : null;
+                }
+            }
+        });
+    }
 
-                return resultSet.next() ? resultSet.getString("IP") : null;
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        return submitRead(connection -> {
+            Map<String, String> result = new HashMap<>();
+            List<String> names = new ArrayList<>(new LinkedHashSet<>(playerNames));
 
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+            for (int from = 0; from < names.size(); from += BATCH_SIZE) {
+                List<String> batch = names.subList(from, Math.min(from + BATCH_SIZE, names.size()));
+                String sql = "SELECT PLAYER_NAME, IP FROM IPSecurity WHERE PLAYER_NAME IN ("
+                        + String.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+
+                try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        preparedStatement.setString(i + 1, batch.get(i));
+                    }
+
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            result.put(resultSet.getString(1), resultSet.getString(2));
+                        }
+                    }
+                }
             }
+
+            return result;
         });
     }
 
     @Override
     public CompletableFuture<Boolean> removePlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "DELETE FROM IPSecurity WHERE PLAYER_NAME = ?";
-
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+        return submitWrite(connection -> {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(DELETE_SQL)) {
 
                 preparedStatement.setString(1, playerName);
 
                 return preparedStatement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (writeLock) {
+            running = false;
+        }
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!writerThread.isAlive()) {
+            // The writer drains the queue before it exits, this only catches a writer that died
+            WriteTask task;
+            while ((task = writeQueue.poll()) != null) {
+                task.future.completeExceptionally(new IllegalStateException("SQLite storage is shut down"));
+            }
+        }
+
+        for (Connection connection : allReadConnections) {
+            closeQuietly(connection);
+        }
+        closeQuietly(writeConnection);
+    }
 
+    /**
+     * @return The number of writes waiting for the writer thread
+     */
+    public int getPendingWrites() {
+        return writeQueue.size();
+    }
+
+    private <T> CompletableFuture<T> submitRead(SQLFunction<T> function) {
+        return executor.supply(() -> {
+            Connection connection = null;
+            try {
+                connection = readConnections.take();
+                return function.apply(connection);
             } catch (SQLException e) {
                 throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                if (connection != null) {
+                    readConnections.add(connection);
+                }
             }
         });
     }
 
-    @Override
-    public void shutdown() {
+    private <T> CompletableFuture<T> submitWrite(SQLFunction<T> function) {
+        WriteTask task = new WriteTask(function);
+        synchronized (writeLock) {
+            if (!running) {
+                task.future.completeExceptionally(new IllegalStateException("SQLite storage is shut down"));
+                return castFuture(task.future);
+            }
+            writeQueue.add(task);
+        }
+        return castFuture(task.future);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> castFuture(CompletableFuture<Object> future) {
+        return (CompletableFuture<T>) (CompletableFuture<?>) future;
+    }
+
+    /**
+     * Writer loop: waits for a write, drains whatever else is queued and commits it all at once.
+     */
+    private void runWriter() {
+        List<WriteTask> batch = new ArrayList<>(MAX_WRITES_PER_COMMIT);
+
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                WriteTask first = running ? writeQueue.take() : writeQueue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown, drain what is left
+                continue;
+            }
+
+            writeQueue.drainTo(batch, MAX_WRITES_PER_COMMIT - 1);
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(List<WriteTask> batch) {
+        Object[] results = new Object[batch.size()];
+
+        try {
+            writeConnection.setAutoCommit(false);
+
+            for (int i = 0; i < batch.size(); i++) {
+                results[i] = batch.get(i).function.apply(writeConnection);
+            }
+
+            writeConnection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+
+            // One bad write must not fail the others, so retry them one by one
+            if (batch.size() > 1) {
+                for (WriteTask task : batch) {
+                    commitBatch(Collections.singletonList(task));
+                }
+                return;
+            }
+
+            complete(batch.get(0), null, e);
+            return;
+        } finally {
+            try {
+                writeConnection.setAutoCommit(true);
+            } catch (SQLException e) {
+                PluginLogger.severe("Unable to restore SQLite auto-commit: " + e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), results[i], null);
+        }
+    }
+
+    /**
+     * Completes a write on the storage executor, so the caller's dependent stages do not run on the writer thread.
+     */
+    private void complete(WriteTask task, Object result, Throwable error) {
+        Runnable completion = () -> {
+            if (error != null) {
+                task.future.completeExceptionally(error);
+            } else {
+                task.future.complete(result);
+            }
+        };
+
+        try {
+            executor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            // The executor is full or shut down, completing here is still better than never
+            completion.run();
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            writeConnection.rollback();
+        } catch (SQLException e) {
+            PluginLogger.severe("Unable to roll back SQLite transaction: " + e.getMessage());
+        }
+    }
+
+    private static void applyPragmas(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("PRAGMA cache_size = -8000");
+            statement.execute("PRAGMA mmap_size = 67108864");
+            statement.execute("PRAGMA busy_timeout = 5000");
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
         if (connection != null) {
             try {
                 connection.close();
@@ -104,10 +339,58 @@ public class SQLiteStorage implements DataStorage {
     }
 
     private void createTable() {
-        try (Statement statement = connection.createStatement()) {
-            statement.executeUpdate("CREATE TABLE IF NOT EXISTS IPSecurity (PLAYER_NAME VARCHAR(64) PRIMARY KEY, IP VARCHAR(64) NOT NULL)");
+        try (Statement statement = writeConnection.createStatement()) {
+            boolean exists;
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'IPSecurity'")) {
+                exists = resultSet.next();
+            }
+
+            if (!exists) {
+                statement.executeUpdate("CREATE TABLE IPSecurity (PLAYER_NAME VARCHAR(64) PRIMARY KEY, IP VARCHAR("
+                        + IPAllowlist.MAXIMUM_LENGTH + ") NOT NULL)");
+                statement.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+                return;
+            }
+
+            int version;
+            try (ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+                version = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+
+            if (version < SCHEMA_VERSION) {
+                migrateTable(statement, version);
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Brings a database created by an older version up to {@link #SCHEMA_VERSION}.
+     *
+     * @param statement The statement to migrate with
+     * @param version   The schema version found in the database
+     */
+    private void migrateTable(Statement statement, int version) throws SQLException {
+        // Version 1 stores allowlists in the IP column. SQLite does not enforce VARCHAR lengths,
+        // so the existing column already holds them and only the version is bumped
+        statement.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+
+        PluginLogger.info("Migrated SQLite database from schema version " + version + " to " + SCHEMA_VERSION);
+    }
+
+    @FunctionalInterface
+    private interface SQLFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private static final class WriteTask {
+        private final SQLFunction<?> function;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private WriteTask(SQLFunction<?> function) {
+            this.function = function;
+        }
+    }
 }
@@ -0,0 +1,189 @@
+package dev.khanh.ipsecurity.data;
+
+import dev.khanh.ipsecurity.util.PluginLogger;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Executor owned by the plugin that runs all blocking storage I/O, so JDBC calls and
+ * file writes never occupy the JVM-wide {@link ForkJoinPool#commonPool()}.
+ *
+ * @author KhanhHuynh1402
+ */
+public class StorageExecutor implements Executor {
+    private final ExecutorService executor;
+    /**
+     * The bounded pool, or null when running in virtual thread mode.
+     */
+    private final ThreadPoolExecutor pool;
+    @Getter
+    private final boolean virtualThreads;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger virtualInFlight = new AtomicInteger();
+
+    /**
+     * Constructs a new StorageExecutor.
+     *
+     * @param threads        Number of platform threads
+     * @param queueSize      Capacity of the task queue
+     * @param callerRuns     true to run rejected tasks on the submitting thread, false to fail them.
+     *                       Tasks submitted from the server thread are failed either way, blocking I/O must not stall a tick
+     * @param virtualThreads true to use one virtual thread per task when the JVM supports it
+     */
+    public StorageExecutor(int threads, int queueSize, boolean callerRuns, boolean virtualThreads) {
+        ExecutorService virtualExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.pool = null;
+            this.virtualThreads = true;
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "IPSecurity-Storage-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        RejectedExecutionHandler rejectionHandler = (runnable, executor) -> {
+            rejected.incrementAndGet();
+            if (callerRuns && !executor.isShutdown() && !isServerThread()) {
+                runnable.run();
+            } else {
+                throw new RejectedExecutionException("Storage queue is full (" + executor.getQueue().size() + " tasks)");
+            }
+        };
+
+        this.pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                threadFactory,
+                rejectionHandler
+        );
+        this.executor = pool;
+        this.virtualThreads = false;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (pool != null) {
+            pool.execute(command);
+            return;
+        }
+
+        virtualInFlight.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                command.run();
+            } finally {
+                virtualInFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Runs a task on this executor. Unlike {@link CompletableFuture#supplyAsync(Supplier, Executor)}, a rejected task
+     * fails the returned future instead of throwing at the caller, so callers only have to handle one failure path.
+     *
+     * @param task The task
+     * @param <T>  The type of the result
+     * @return The future of the result, failed with a {@link RejectedExecutionException} if the task was rejected
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, this);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Runs a task on this executor, see {@link #supply(Supplier)}.
+     *
+     * @param task The task
+     * @return The future completed once the task ran, failed with a {@link RejectedExecutionException} if it was rejected
+     */
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return The number of tasks waiting in the queue, or in flight in virtual thread mode
+     */
+    public int getQueueDepth() {
+        return pool != null ? pool.getQueue().size() : virtualInFlight.get();
+    }
+
+    /**
+     * @return The number of threads currently running a task
+     */
+    public int getActiveCount() {
+        return pool != null ? pool.getActiveCount() : virtualInFlight.get();
+    }
+
+    /**
+     * @return The number of tasks completed so far, or -1 in virtual thread mode
+     */
+    public long getCompletedTaskCount() {
+        return pool != null ? pool.getCompletedTaskCount() : -1;
+    }
+
+    /**
+     * @return The number of tasks that did not fit in the queue
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the queued ones to finish.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                PluginLogger.warning("Storage tasks did not finish in time, " + executor.shutdownNow().size() + " were dropped");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isServerThread() {
+        // No server while benchmarking
+        return Bukkit.getServer() != null && Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor through reflection, since the plugin targets Java 8.
+     *
+     * @return The executor, or null if the JVM has no virtual threads
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            PluginLogger.warning("Virtual threads require Java 21 or newer, falling back to platform threads");
+            return null;
+        }
+    }
+}
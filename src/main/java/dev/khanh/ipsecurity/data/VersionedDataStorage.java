@@ -0,0 +1,89 @@
+package dev.khanh.ipsecurity.data;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Counts the writes going through to another {@link DataStorage} and reports the written player names,
+ * so results derived from earlier reads can tell whether they are still current.
+ * The version is bumped both when a write starts and when it completes, so a read that overlaps a
+ * write never sees the same version before and after.
+ *
+ * @author KhanhHuynh1402
+ */
+public class VersionedDataStorage implements DataStorage {
+    @Getter
+    private final DataStorage delegate;
+    private final AtomicLong version = new AtomicLong();
+    private final List<Consumer<String>> writeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a new VersionedDataStorage.
+     *
+     * @param delegate The backing {@link DataStorage}
+     */
+    public VersionedDataStorage(DataStorage delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
+        onWrite(playerName);
+        CompletableFuture<Void> future = delegate.setPlayerIP(playerName, ip);
+        future.whenComplete((result, throwable) -> onWrite(playerName));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerIP(String playerName) {
+        return delegate.getPlayerIP(playerName);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        return delegate.getPlayerIPs(playerNames);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
+        onWrite(playerName);
+        CompletableFuture<Boolean> future = delegate.removePlayerIP(playerName);
+        future.whenComplete((result, throwable) -> onWrite(playerName));
+        return future;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * @return The current version, changed by every write
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Registers a listener called with the player name whenever a write for that player starts or completes.
+     *
+     * @param listener The listener
+     */
+    public void addWriteListener(Consumer<String> listener) {
+        writeListeners.add(listener);
+    }
+
+    private void onWrite(String playerName) {
+        version.incrementAndGet();
+        for (Consumer<String> listener : writeListeners) {
+            listener.accept(playerName);
+        }
+    }
+}
@@ -1,26 +1,55 @@
 package dev.khanh.ipsecurity.data;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.util.PluginLogger;
 import lombok.Getter;
 import org.bukkit.configuration.file.YamlConfiguration;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.concurrent.CompletableFuture;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implementation of {@link DataStorage} interface for YAML file-based storage.
+ * Reads are served from an in-memory map. Every change is appended to a journal that is
+ * flushed with a short debounce, and the journal is compacted into the data.yml snapshot
+ * in the background once it grows large. Writers only hold the lock of the storage for the
+ * in-memory update, the disk is written under a separate lock by the journal thread.
  *
  * @author KhanhHuynh1402
  */
 public class YamlStorage implements DataStorage {
+    /**
+     * Delay before queued changes are written to the journal, so bursts share one fsync.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 200;
+    /**
+     * Number of journal entries after which the journal is compacted into the snapshot.
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
     @Getter
     private final IPSecurityPlugin plugin;
     @Getter
     private final File storageFile;
     @Getter
-    private final YamlConfiguration yaml;
-
+    private final File journalFile;
+    private final Map<String, String> data = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService journalExecutor;
+    private final List<PendingChange> pendingChanges = new ArrayList<>();
+    /**
+     * Guards the journal file, held while writing to disk so writers never wait on it.
+     */
+    private final Object journalLock = new Object();
+    private FileChannel journalChannel;
+    private boolean flushScheduled;
+    private int journalEntries;
 
     /**
      * Constructor for YamlStorage.
@@ -30,54 +59,280 @@ public class YamlStorage implements DataStorage {
     public YamlStorage(IPSecurityPlugin plugin) {
         this.plugin = plugin;
         this.storageFile = new File(plugin.getDataFolder(), "data.yml");
+        this.journalFile = new File(plugin.getDataFolder(), "data.journal");
 
         try {
 
-            if (!storageFile.exists()) {
-                //noinspection ResultOfMethodCallIgnored
-                storageFile.createNewFile();
+            if (storageFile.exists()) {
+                YamlConfiguration yaml = YamlConfiguration.loadConfiguration(storageFile);
+                for (String key : yaml.getKeys(false)) {
+                    String ip = yaml.getString(key);
+                    if (ip != null) {
+                        data.put(key, ip);
+                    }
+                }
+            }
+
+            int replayed = replayJournal();
+            if (replayed > 0) {
+                PluginLogger.info("Recovered " + replayed + " changes from data.journal");
+                writeSnapshot(new TreeMap<>(data));
             }
 
-            yaml = YamlConfiguration.loadConfiguration(storageFile);
+            journalChannel = openJournal(true);
         } catch (IOException e) {
             throw new RuntimeException("An error occurred while loading file data.yml", e);
         }
-    }
 
-    public void save() {
-        try {
-            yaml.save(storageFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        journalExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IPSecurity-Yaml-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public CompletableFuture<Void> setPlayerIP(String playerName, String ip) {
-        return CompletableFuture.runAsync(() -> {
-            yaml.set(playerName, ip);
-            save();
-        });
+        // The map and journal are updated under one lock so their order of changes always agrees
+        synchronized (this) {
+            data.put(playerName, ip);
+            return appendChange("SET " + escape(playerName) + " " + escape(ip));
+        }
     }
 
     @Override
     public CompletableFuture<String> getPlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> yaml.getString(playerName));
+        return CompletableFuture.completedFuture(data.get(playerName));
     }
 
     @Override
-    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-            boolean flag = yaml.contains(playerName);
+    public CompletableFuture<Map<String, String>> getPlayerIPs(Collection<String> playerNames) {
+        Map<String, String> result = new HashMap<>();
+
+        for (String playerName : playerNames) {
+            String ip = data.get(playerName);
+            if (ip != null) {
+                result.put(playerName, ip);
+            }
+        }
 
-            yaml.set(playerName, null);
-            save();
+        return CompletableFuture.completedFuture(result);
+    }
 
-            return flag;
-        });
+    @Override
+    public CompletableFuture<Boolean> removePlayerIP(String playerName) {
+        synchronized (this) {
+            if (data.remove(playerName) == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            return appendChange("DEL " + escape(playerName)).thenApply(ignored -> true);
+        }
     }
 
     @Override
     public void shutdown() {
+        journalExecutor.shutdown();
+        try {
+            if (!journalExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                PluginLogger.warning("Journal flush did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        synchronized (journalLock) {
+            try {
+                compact();
+                journalChannel.close();
+            } catch (IOException e) {
+                PluginLogger.severe("Unable to compact data.journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queues a journal entry and schedules a debounced flush.
+     *
+     * @param entry The journal line
+     * @return A future completed once the entry is durable on disk
+     */
+    private synchronized CompletableFuture<Void> appendChange(String entry) {
+        PendingChange change = new PendingChange(entry);
+        pendingChanges.add(change);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            try {
+                journalExecutor.schedule(this::flushAndMaybeCompact, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the final flush in shutdown() writes it
+                flushScheduled = false;
+            }
+        }
+
+        return change.future;
+    }
+
+    private void flushAndMaybeCompact() {
+        flush();
+
+        synchronized (journalLock) {
+            if (journalEntries >= COMPACT_THRESHOLD) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    PluginLogger.severe("Unable to compact data.journal: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all queued entries to the journal and forces them to disk in one go.
+     * Only the queue is swapped under the storage lock, so writers never wait for the disk.
+     */
+    private void flush() {
+        List<PendingChange> changes;
+        synchronized (this) {
+            flushScheduled = false;
+
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+
+            changes = new ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (PendingChange change : changes) {
+            builder.append(change.entry).append('\n');
+        }
+
+        try {
+            synchronized (journalLock) {
+                byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    journalChannel.write(buffer);
+                }
+                journalChannel.force(false);
+                journalEntries += changes.size();
+            }
+        } catch (IOException e) {
+            for (PendingChange change : changes) {
+                change.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (PendingChange change : changes) {
+            change.future.complete(null);
+        }
+    }
+
+    /**
+     * Writes a copy of the in-memory map to data.yml and truncates the journal.
+     * Must be called holding the journal lock, so no entry is written between the copy and the truncation.
+     * Changes still queued at the copy are in the snapshot and are written to the new journal afterwards,
+     * replaying them again is harmless.
+     */
+    private void compact() throws IOException {
+        Map<String, String> snapshot;
+        synchronized (this) {
+            snapshot = new TreeMap<>(data);
+        }
+
+        writeSnapshot(snapshot);
+        journalChannel.close();
+        journalChannel = openJournal(false);
+        journalEntries = 0;
+    }
+
+    private void writeSnapshot(Map<String, String> snapshot) throws IOException {
+        YamlConfiguration yaml = new YamlConfiguration();
+        for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+            yaml.set(entry.getKey(), entry.getValue());
+        }
+
+        File tempFile = new File(storageFile.getPath() + ".tmp");
+        yaml.save(tempFile);
+        Files.move(tempFile.toPath(), storageFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int replayJournal() throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Spaces in names are escaped, so everything after the name is the value
+                String[] parts = line.split(" ", 3);
+
+                if (parts.length == 3 && parts[0].equals("SET") && !parts[1].isEmpty()) {
+                    data.put(unescape(parts[1]), unescape(parts[2]));
+                    replayed++;
+                } else if (parts.length == 2 && parts[0].equals("DEL") && !parts[1].isEmpty()) {
+                    data.remove(unescape(parts[1]));
+                    replayed++;
+                } else if (!line.isEmpty()) {
+                    // A torn last line from a crash is expected, anything else is worth a warning
+                    PluginLogger.warning("Skipping malformed journal entry: " + line);
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Escapes line breaks and spaces in a journal field, so every entry stays on one line and splits into its fields.
+     * Names come unvalidated from Discord commands, so they are escaped like values.
+     */
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf(' ') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace(" ", "\\s");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == 's' ? ' ' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private FileChannel openJournal(boolean append) throws IOException {
+        return FileChannel.open(
+                journalFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
+        );
+    }
+
+    private static final class PendingChange {
+        private final String entry;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingChange(String entry) {
+            this.entry = entry;
+        }
     }
 }
@@ -2,7 +2,9 @@ package dev.khanh.ipsecurity.file;
 
 import com.google.common.base.Preconditions;
 import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.util.EmbedTemplate;
 import dev.khanh.ipsecurity.util.MessageEmbedUtil;
+import dev.khanh.ipsecurity.util.Placeholders;
 import lombok.Getter;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
@@ -20,6 +22,7 @@ import java.io.IOException;
 /**
  * Manages messages and embed messages
  * This class loads messages from a YAML configuration file and provides methods to retrieve message embeds.
+ * Embed placeholders are compiled once when the file is loaded.
  *
  * @author KhanhHuynh1402
  */
@@ -34,17 +37,20 @@ public class Messages {
     private String verifiedMessage;
     @Getter
     private String noPermissionMessage;
-    private MessageEmbed verifiedMessageEmbed;
-    private MessageEmbed invalidMessageEmbed;
-    private MessageEmbed noPermissionMessageEmbed;
-    private MessageEmbed wrongChannelMessageEmbed;
-    private MessageEmbed invalidSyntaxMessageEmbed;
-    private MessageEmbed invalidIpFormatMessageEmbed;
-    private MessageEmbed setIpSuccessfulMessageEmbed;
-    private MessageEmbed setIpFailedMessageEmbed;
-    private MessageEmbed removeIpSuccessfulMessageEmbed;
-    private MessageEmbed removeIpFailedMessageEmbed;
-    private MessageEmbed notFoundPlayerMessageEmbed;
+    private EmbedTemplate verifiedMessageEmbed;
+    private EmbedTemplate invalidMessageEmbed;
+    private EmbedTemplate noPermissionMessageEmbed;
+    private EmbedTemplate wrongChannelMessageEmbed;
+    private EmbedTemplate invalidSyntaxMessageEmbed;
+    private EmbedTemplate invalidIpFormatMessageEmbed;
+    private EmbedTemplate setIpSuccessfulMessageEmbed;
+    private EmbedTemplate setIpFailedMessageEmbed;
+    private EmbedTemplate addIpSuccessfulMessageEmbed;
+    private EmbedTemplate removeIpSuccessfulMessageEmbed;
+    private EmbedTemplate removeIpFailedMessageEmbed;
+    private EmbedTemplate removeEntrySuccessfulMessageEmbed;
+    private EmbedTemplate notFoundPlayerMessageEmbed;
+    private EmbedTemplate notFoundEntryMessageEmbed;
 
     /**
      * Constructs a new Messages instance.
@@ -109,6 +115,9 @@ public class Messages {
         removeIpSuccessfulMessageEmbed = loadMessageEmbed(defaultMessage, "remove-ip-successful");
         removeIpFailedMessageEmbed = loadMessageEmbed(defaultMessage, "remove-ip-failed");
         notFoundPlayerMessageEmbed = loadMessageEmbed(defaultMessage, "not-found-player");
+        addIpSuccessfulMessageEmbed = loadMessageEmbed(defaultMessage, "add-ip-successful", setIpSuccessfulMessageEmbed);
+        removeEntrySuccessfulMessageEmbed = loadMessageEmbed(defaultMessage, "remove-entry-successful", removeIpSuccessfulMessageEmbed);
+        notFoundEntryMessageEmbed = loadMessageEmbed(defaultMessage, "not-found-entry", notFoundPlayerMessageEmbed);
 
     }
 
@@ -155,12 +164,23 @@ public class Messages {
         return builder.build();
     }
 
-    private MessageEmbed loadMessageEmbed(MessageEmbed defaultMessage, String message) {
+    /**
+     * Loads a message added in a later version, falling back to an older one when the
+     * messages.yml file predates it.
+     */
+    private EmbedTemplate loadMessageEmbed(MessageEmbed defaultMessage, String message, EmbedTemplate fallback) {
+        if (!yaml.isConfigurationSection("discord.messages." + message)) {
+            return fallback;
+        }
+        return loadMessageEmbed(defaultMessage, message);
+    }
+
+    private EmbedTemplate loadMessageEmbed(MessageEmbed defaultMessage, String message) {
         try {
 
             ConfigurationSection section = yaml.getConfigurationSection("discord.messages." + message);
             Preconditions.checkNotNull(section, "[messages.yml] discord.messages.%s is null", message);
-            return buildEmbedFromSection(section, defaultMessage);
+            return EmbedTemplate.compile(buildEmbedFromSection(section, defaultMessage));
 
         } catch (Exception e) {
             throw new RuntimeException("An error occurred while loading message: discord.messages." + message);
@@ -174,7 +194,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getVerifiedMessageEmbed(Player player) {
-        return MessageEmbedUtil.parsePlaceholder(verifiedMessageEmbed, player);
+        return verifiedMessageEmbed.render(MessageEmbedUtil.placeholdersOf(player));
     }
 
     /**
@@ -184,7 +204,18 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getInvalidMessageEmbed(Player player) {
-        return MessageEmbedUtil.parsePlaceholder(invalidMessageEmbed, player);
+        return invalidMessageEmbed.render(MessageEmbedUtil.placeholdersOf(player));
+    }
+
+    /**
+     * Retrieves the message embed for notifying a player that verification failed.
+     *
+     * @param playerName The name of the player.
+     * @param ip         The IP address the player connected from.
+     * @return The message embed.
+     */
+    public MessageEmbed getInvalidMessageEmbed(String playerName, String ip) {
+        return invalidMessageEmbed.render(Placeholders.of(playerName, ip));
     }
 
     /**
@@ -195,7 +226,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getSetIpSuccessfulMessageEmbed(String playerName, String ip) {
-        return MessageEmbedUtil.parsePlaceholder(setIpSuccessfulMessageEmbed, playerName, ip);
+        return setIpSuccessfulMessageEmbed.render(Placeholders.of(playerName, ip));
     }
 
     /**
@@ -206,7 +237,29 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getSetIpFailedMessageEmbed(String playerName, String ip) {
-        return MessageEmbedUtil.parsePlaceholder(setIpFailedMessageEmbed, playerName, ip);
+        return setIpFailedMessageEmbed.render(Placeholders.of(playerName, ip));
+    }
+
+    /**
+     * Retrieves the message embed for notifying that an entry has been added to a player's allowlist.
+     *
+     * @param playerName The name of the player.
+     * @param ip         The added IP address or CIDR range.
+     * @return The message embed.
+     */
+    public MessageEmbed getAddIpSuccessfulMessageEmbed(String playerName, String ip) {
+        return addIpSuccessfulMessageEmbed.render(Placeholders.of(playerName, ip));
+    }
+
+    /**
+     * Retrieves the message embed for notifying that an entry has been removed from a player's allowlist.
+     *
+     * @param playerName The name of the player.
+     * @param ip         The removed IP address or CIDR range.
+     * @return The message embed.
+     */
+    public MessageEmbed getRemoveEntrySuccessfulMessageEmbed(String playerName, String ip) {
+        return removeEntrySuccessfulMessageEmbed.render(Placeholders.of(playerName, ip));
     }
 
     /**
@@ -216,7 +269,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getRemoveIpSuccessfulMessageEmbed(String playerName) {
-        return MessageEmbedUtil.parsePlaceholder(removeIpSuccessfulMessageEmbed, playerName, null);
+        return removeIpSuccessfulMessageEmbed.render(Placeholders.of(playerName));
     }
 
     /**
@@ -226,7 +279,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getRemoveIpFailedMessageEmbed(String playerName) {
-        return MessageEmbedUtil.parsePlaceholder(removeIpFailedMessageEmbed, playerName, null);
+        return removeIpFailedMessageEmbed.render(Placeholders.of(playerName));
     }
 
     /**
@@ -236,7 +289,18 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getNotFoundPlayerMessageEmbed(String playerName) {
-        return MessageEmbedUtil.parsePlaceholder(notFoundPlayerMessageEmbed, playerName);
+        return notFoundPlayerMessageEmbed.render(Placeholders.of(playerName));
+    }
+
+    /**
+     * Retrieves the message embed for notifying that an entry is not in a player's allowlist.
+     *
+     * @param playerName The name of the player.
+     * @param ip         The IP address or CIDR range.
+     * @return The message embed.
+     */
+    public MessageEmbed getNotFoundEntryMessageEmbed(String playerName, String ip) {
+        return notFoundEntryMessageEmbed.render(Placeholders.of(playerName, ip));
     }
 
     /**
@@ -245,7 +309,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getNoPermissionMessageEmbed() {
-        return MessageEmbedUtil.parseTimePlaceholder(noPermissionMessageEmbed);
+        return noPermissionMessageEmbed.render(Placeholders.time());
     }
 
     /**
@@ -254,7 +318,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getWrongChannelMessageEmbed() {
-        return MessageEmbedUtil.parseTimePlaceholder(wrongChannelMessageEmbed);
+        return wrongChannelMessageEmbed.render(Placeholders.time());
     }
 
     /**
@@ -263,7 +327,7 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getInvalidSyntaxMessageEmbed() {
-        return MessageEmbedUtil.parseTimePlaceholder(invalidSyntaxMessageEmbed);
+        return invalidSyntaxMessageEmbed.render(Placeholders.time());
     }
 
     /**
@@ -272,6 +336,6 @@ public class Messages {
      * @return The message embed.
      */
     public MessageEmbed getInvalidIpFormatMessageEmbed() {
-        return MessageEmbedUtil.parseTimePlaceholder(invalidIpFormatMessageEmbed);
+        return invalidIpFormatMessageEmbed.render(Placeholders.time());
     }
 }
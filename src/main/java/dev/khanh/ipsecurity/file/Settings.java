@@ -3,6 +3,7 @@ package dev.khanh.ipsecurity.file;
 import com.google.common.base.Preconditions;
 import dev.khanh.ipsecurity.IPSecurityPlugin;
 import dev.khanh.ipsecurity.data.DataStorageType;
+import dev.khanh.ipsecurity.util.CachedTimeFormatter;
 import dev.khanh.ipsecurity.util.PluginLogger;
 import lombok.Getter;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -12,9 +13,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * Represents the configuration settings for the IPSecurityPlugin.
@@ -24,6 +27,11 @@ import java.util.TimeZone;
  * @author KhanhHuynh1402
  */
 public class Settings {
+    /**
+     * SimpleDateFormat letters printing something else as a DateTimeFormatter pattern: u, and S shorter than SSS.
+     */
+    private static final Pattern LEGACY_DATE_LETTERS = Pattern.compile("u|(?<!S)S{1,2}(?!S)");
+
     @Getter
     private final IPSecurityPlugin plugin;
     @Getter
@@ -35,27 +43,75 @@ public class Settings {
     @Getter
     private DataStorageType dataStorageType;
     @Getter
+    private int sqliteReadConnections;
+    @Getter
+    private boolean isStorageCacheEnable;
+    @Getter
+    private int storageCacheMaximumSize;
+    @Getter
+    private long storageCacheExpireAfter;
+    @Getter
+    private int storageThreads;
+    @Getter
+    private int storageQueueSize;
+    @Getter
+    private boolean isStorageCallerRuns;
+    @Getter
+    private boolean isStorageVirtualThreads;
+    @Getter
     private boolean isShutdownServerOnDisable;
     @Getter
-    private TimeZone timeZone;
+    private ZoneId timeZone;
     @Getter
-    private SimpleDateFormat dateFormat;
+    private CachedTimeFormatter timeFormatter;
     @Getter
     private int protectInterval;
     @Getter
     private boolean isRealtimeProtectEnable;
     @Getter
+    private boolean isEventDrivenProtectEnable;
+    @Getter
+    private int safetyNetInterval;
+    @Getter
+    private boolean isPreLoginRejectEnable;
+    @Getter
     private boolean isCheckOp;
     @Getter
     private boolean isCheckGamemode;
     @Getter
     private List<String> checkPermissions;
     @Getter
+    private long permissionCacheRefreshAfter;
+    @Getter
     private boolean isAddIPButtonEnable;
     @Getter
     private String addIPButtonText;
     @Getter
+    private long addIPButtonExpireAfter;
+    @Getter
     private boolean isSendValidMessage;
+    @Getter
+    private int notificationQueueCapacity;
+    @Getter
+    private long notificationFlushInterval;
+    @Getter
+    private boolean isNotificationSpoolEnable;
+    @Getter
+    private long notificationSpoolMaximumSize;
+    @Getter
+    private boolean isDiscordWebhookMode;
+    @Getter
+    private String discordWebhookUrl;
+    @Getter
+    private boolean isMetricsFileEnable;
+    @Getter
+    private int metricsFileInterval;
+    @Getter
+    private boolean isMetricsHttpEnable;
+    @Getter
+    private String metricsHttpHost;
+    @Getter
+    private int metricsHttpPort;
 
     /**
      * Constructs a new Settings object.
@@ -105,6 +161,75 @@ public class Settings {
                 config.set("general.send-valid-message", true);
             }
 
+            if (currentVersion < 2) {
+                config.set("storage.cache.enable", true);
+                config.set("storage.cache.maximum-size", 1000);
+                config.set("storage.cache.expire-after", 300);
+            }
+
+            if (currentVersion < 3) {
+                config.set("general.protect.event-driven.enable", true);
+                config.set("general.protect.event-driven.safety-net-interval", 1200);
+            }
+
+            if (currentVersion < 4) {
+                config.set("storage.executor.threads", 4);
+                config.set("storage.executor.queue-size", 1000);
+                config.set("storage.executor.rejection-policy", "CALLER_RUNS");
+                config.set("storage.executor.virtual-threads", false);
+            }
+
+            if (currentVersion < 5) {
+                config.set("storage.sqlite-properties.read-connections", 2);
+            }
+
+            if (currentVersion < 6) {
+                config.set("general.protect.pre-login-reject", false);
+            }
+
+            if (currentVersion < 7) {
+                config.set("discord.notifications.queue-capacity", 500);
+                config.set("discord.notifications.flush-interval", 1000);
+            }
+
+            if (currentVersion < 8) {
+                config.set("general.add-ip-button.expire-after", 168);
+            }
+
+            if (currentVersion < 9) {
+                config.set("general.time-resolution", 1);
+
+                // The date format was a SimpleDateFormat pattern before, a few letters changed meaning
+                String dateFormat = config.getString("general.date-format", "");
+                if (LEGACY_DATE_LETTERS.matcher(dateFormat.replaceAll("'[^']*'", "")).find()) {
+                    PluginLogger.warning("[config.yml] general.date-format is now a DateTimeFormatter pattern: u is the year "
+                            + "instead of the day of the week and S is a fraction of the second instead of milliseconds. "
+                            + "Please review " + dateFormat);
+                }
+            }
+
+            if (currentVersion < 10) {
+                config.set("metrics.file.enable", false);
+                config.set("metrics.file.interval", 60);
+                config.set("metrics.http.enable", false);
+                config.set("metrics.http.host", "127.0.0.1");
+                config.set("metrics.http.port", 9464);
+            }
+
+            if (currentVersion < 11) {
+                config.set("discord.mode", "BOT");
+                config.set("discord.webhook-url", "");
+            }
+
+            if (currentVersion < 12) {
+                config.set("discord.notifications.spool.enable", true);
+                config.set("discord.notifications.spool.maximum-size", 16);
+            }
+
+            if (currentVersion < 13) {
+                config.set("general.protect.permission-cache.refresh-after", 60);
+            }
+
             config.set("config-version", defVersion);
 
             plugin.saveConfig();
@@ -126,21 +251,57 @@ public class Settings {
             throw new RuntimeException(String.format("[config.yml] %s is invalid storage type", type));
         }
 
+        sqliteReadConnections = config.getInt("storage.sqlite-properties.read-connections", 2);
+        Preconditions.checkArgument(sqliteReadConnections > 0, "[config.yml] storage.sqlite-properties.read-connections must be a positive integer");
+
+        isStorageCacheEnable = config.getBoolean("storage.cache.enable", true);
+
+        storageCacheMaximumSize = config.getInt("storage.cache.maximum-size", 1000);
+        Preconditions.checkArgument(storageCacheMaximumSize > 0, "[config.yml] storage.cache.maximum-size must be a positive integer");
+
+        storageCacheExpireAfter = config.getLong("storage.cache.expire-after", 300);
+
+        storageThreads = config.getInt("storage.executor.threads", 4);
+        Preconditions.checkArgument(storageThreads > 0, "[config.yml] storage.executor.threads must be a positive integer");
+
+        storageQueueSize = config.getInt("storage.executor.queue-size", 1000);
+        Preconditions.checkArgument(storageQueueSize > 0, "[config.yml] storage.executor.queue-size must be a positive integer");
+
+        String rejectionPolicy = config.getString("storage.executor.rejection-policy", "CALLER_RUNS");
+        if ("CALLER_RUNS".equalsIgnoreCase(rejectionPolicy)) {
+            isStorageCallerRuns = true;
+        } else if ("ABORT".equalsIgnoreCase(rejectionPolicy)) {
+            isStorageCallerRuns = false;
+        } else {
+            throw new RuntimeException(String.format("[config.yml] %s is invalid rejection policy", rejectionPolicy));
+        }
+
+        isStorageVirtualThreads = config.getBoolean("storage.executor.virtual-threads", false);
+
         isShutdownServerOnDisable = config.getBoolean("general.shutdown-on-disable", false);
 
         String timezoneID = config.getString("general.timezone");
-        timeZone = TimeZone.getTimeZone(timezoneID);
+        try {
+            timeZone = timezoneID == null ? ZoneId.systemDefault() : ZoneId.of(timezoneID);
+        } catch (DateTimeException e) {
+            PluginLogger.severe(String.format("[config.yml] Invalid timezone: %s. Use GMT instead", timezoneID));
+            timeZone = ZoneId.of("GMT");
+        }
+
+        int timeResolution = config.getInt("general.time-resolution", 1);
+        Preconditions.checkArgument(timeResolution > 0, "[config.yml] general.time-resolution must be a positive integer");
 
         String stringDateFormat = config.getString("general.date-format");
         if (stringDateFormat == null) {
             PluginLogger.severe("[config.yml] general.date-format is null. Use default date format dd/MM/yyyy HH:mm:ss instead");
-            dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+            timeFormatter = new CachedTimeFormatter("dd/MM/yyyy HH:mm:ss", timeZone, timeResolution);
         } else {
             try {
-                dateFormat = new SimpleDateFormat(stringDateFormat);
-            } catch (IllegalArgumentException e) {
-                PluginLogger.severe(String.format("[config.yml] Invalid date format: %s. Use default date format dd/MM/yyyy HH:mm:ss instead", stringDateFormat));
-                dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+                timeFormatter = new CachedTimeFormatter(stringDateFormat, timeZone, timeResolution);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                PluginLogger.severe(String.format("[config.yml] Invalid date format: %s (%s). Use default date format dd/MM/yyyy HH:mm:ss instead",
+                        stringDateFormat, e.getMessage()));
+                timeFormatter = new CachedTimeFormatter("dd/MM/yyyy HH:mm:ss", timeZone, timeResolution);
             }
         }
 
@@ -149,18 +310,68 @@ public class Settings {
         protectInterval = config.getInt("general.protect.interval");
         Preconditions.checkArgument(protectInterval > 0, "[config.yml] general.protect.interval must be a positive integer");
 
+        isEventDrivenProtectEnable = config.getBoolean("general.protect.event-driven.enable");
+
+        safetyNetInterval = config.getInt("general.protect.event-driven.safety-net-interval", 1200);
+        Preconditions.checkArgument(safetyNetInterval > 0, "[config.yml] general.protect.event-driven.safety-net-interval must be a positive integer");
+
+        isPreLoginRejectEnable = config.getBoolean("general.protect.pre-login-reject");
+
         isCheckOp = config.getBoolean("general.protect.methods.op");
 
         isCheckGamemode = config.getBoolean("general.protect.methods.gamemode");
 
         checkPermissions = config.getStringList("general.protect.methods.permissions");
 
+        permissionCacheRefreshAfter = config.getLong("general.protect.permission-cache.refresh-after", 60);
+        Preconditions.checkArgument(permissionCacheRefreshAfter >= 0, "[config.yml] general.protect.permission-cache.refresh-after must not be negative");
+
         isAddIPButtonEnable = config.getBoolean("general.add-ip-button.enable");
 
         addIPButtonText = config.getString("general.add-ip-button.text", "");
 
+        addIPButtonExpireAfter = TimeUnit.HOURS.toSeconds(config.getLong("general.add-ip-button.expire-after", 168));
+        Preconditions.checkArgument(addIPButtonExpireAfter > 0, "[config.yml] general.add-ip-button.expire-after must be a positive integer");
+
         isSendValidMessage = config.getBoolean("general.send-valid-message");
 
+        notificationQueueCapacity = config.getInt("discord.notifications.queue-capacity", 500);
+        Preconditions.checkArgument(notificationQueueCapacity > 0, "[config.yml] discord.notifications.queue-capacity must be a positive integer");
+
+        notificationFlushInterval = config.getLong("discord.notifications.flush-interval", 1000);
+        Preconditions.checkArgument(notificationFlushInterval > 0, "[config.yml] discord.notifications.flush-interval must be a positive integer");
+
+        isNotificationSpoolEnable = config.getBoolean("discord.notifications.spool.enable", true);
+
+        notificationSpoolMaximumSize = config.getLong("discord.notifications.spool.maximum-size", 16) * 1024 * 1024;
+        Preconditions.checkArgument(notificationSpoolMaximumSize > 0, "[config.yml] discord.notifications.spool.maximum-size must be a positive integer");
+
+        String discordMode = config.getString("discord.mode", "BOT");
+        if ("BOT".equalsIgnoreCase(discordMode)) {
+            isDiscordWebhookMode = false;
+        } else if ("WEBHOOK".equalsIgnoreCase(discordMode)) {
+            isDiscordWebhookMode = true;
+        } else {
+            throw new RuntimeException(String.format("[config.yml] %s is invalid discord mode", discordMode));
+        }
+
+        discordWebhookUrl = config.getString("discord.webhook-url", "");
+        if (isDiscordWebhookMode) {
+            Preconditions.checkArgument(discordWebhookUrl != null && !discordWebhookUrl.isEmpty(),
+                    "[config.yml] discord.webhook-url is required in WEBHOOK mode");
+        }
+
+        isMetricsFileEnable = config.getBoolean("metrics.file.enable", false);
+
+        metricsFileInterval = config.getInt("metrics.file.interval", 60);
+        Preconditions.checkArgument(metricsFileInterval > 0, "[config.yml] metrics.file.interval must be a positive integer");
+
+        isMetricsHttpEnable = config.getBoolean("metrics.http.enable", false);
+
+        metricsHttpHost = config.getString("metrics.http.host", "127.0.0.1");
+
+        metricsHttpPort = config.getInt("metrics.http.port", 9464);
+        Preconditions.checkArgument(metricsHttpPort > 0 && metricsHttpPort < 65536, "[config.yml] metrics.http.port must be a valid port");
     }
 
 }
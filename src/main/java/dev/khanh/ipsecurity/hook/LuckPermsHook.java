@@ -0,0 +1,63 @@
+package dev.khanh.ipsecurity.hook;
+
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.util.PluginLogger;
+import org.bukkit.Bukkit;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Optional hook into LuckPerms permission recalculation.
+ * LuckPerms is accessed reflectively so the plugin neither compiles nor runs against it when it is absent.
+ *
+ * @author KhanhHuynh1402
+ */
+public class LuckPermsHook {
+
+    /**
+     * Subscribes to LuckPerms' UserDataRecalculateEvent if LuckPerms is enabled.
+     *
+     * @param plugin   The {@link IPSecurityPlugin} instance.
+     * @param callback Called with the UUID of the user whose permissions were recalculated.
+     * @return true if the hook was registered, otherwise false.
+     */
+    public static boolean subscribeRecalculate(IPSecurityPlugin plugin, Consumer<UUID> callback) {
+        if (!Bukkit.getPluginManager().isPluginEnabled("LuckPerms")) {
+            return false;
+        }
+
+        try {
+            // Methods are looked up on the API interfaces, the implementation classes are internal and may not be public
+            Class<?> providerClass = Class.forName("net.luckperms.api.LuckPermsProvider");
+            Class<?> luckPermsClass = Class.forName("net.luckperms.api.LuckPerms");
+            Class<?> eventBusClass = Class.forName("net.luckperms.api.event.EventBus");
+            Class<?> userClass = Class.forName("net.luckperms.api.model.user.User");
+            Class<?> eventClass = Class.forName("net.luckperms.api.event.user.UserDataRecalculateEvent");
+
+            Object luckPerms = providerClass.getMethod("get").invoke(null);
+            Object eventBus = luckPermsClass.getMethod("getEventBus").invoke(luckPerms);
+
+            Method subscribe = eventBusClass.getMethod("subscribe", Object.class, Class.class, Consumer.class);
+            Method getUser = eventClass.getMethod("getUser");
+            Method getUniqueId = userClass.getMethod("getUniqueId");
+
+            Consumer<Object> handler = event -> {
+                try {
+                    Object user = getUser.invoke(event);
+                    callback.accept((UUID) getUniqueId.invoke(user));
+                } catch (ReflectiveOperationException e) {
+                    PluginLogger.debug("Unable to read LuckPerms user: " + e.getMessage());
+                }
+            };
+
+            subscribe.invoke(eventBus, plugin, eventClass, handler);
+            PluginLogger.info("Hooked into LuckPerms permission recalculation");
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            PluginLogger.warning("Unable to hook into LuckPerms: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package dev.khanh.ipsecurity.ip;
+
+import lombok.Getter;
+
+import java.net.InetAddress;
+
+/**
+ * Hand-written parser for IPv4 and IPv6 address literals.
+ * An address is held as 128 bits in two longs, with IPv4 mapped into {@code ::ffff:0:0/96},
+ * so every textual form of the same address parses to the same value. The parser keeps its
+ * result in fields and can be reused, so parsing allocates nothing.
+ * <p>
+ * IPv4 is accepted in dotted-quad form without leading zeros. IPv6 is accepted in the forms of
+ * RFC 4291, including {@code ::} compression and a trailing dotted quad, but without zone ids.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class IPAddressParser {
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+    private static final ThreadLocal<IPAddressParser> PARSERS = ThreadLocal.withInitial(IPAddressParser::new);
+
+    /**
+     * The upper 64 bits of the last parsed address.
+     */
+    @Getter
+    private long high;
+    /**
+     * The lower 64 bits of the last parsed address.
+     */
+    @Getter
+    private long low;
+
+    /**
+     * Parses an address literal.
+     *
+     * @param text The text
+     * @return true if the text is an address, the result is then available from {@link #getHigh()} and {@link #getLow()}
+     */
+    public boolean parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses an address literal from part of a text.
+     *
+     * @param text  The text
+     * @param start The index of the first character
+     * @param end   The index after the last character
+     * @return true if the range is an address, the result is then available from {@link #getHigh()} and {@link #getLow()}
+     */
+    public boolean parse(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ':') {
+                return parseIPv6(text, start, end);
+            }
+        }
+
+        long ipv4 = parseIPv4(text, start, end);
+        if (ipv4 < 0) {
+            return false;
+        }
+
+        high = 0;
+        low = IPV4_MAPPED_PREFIX | ipv4;
+        return true;
+    }
+
+    /**
+     * Loads an address that is already in binary form.
+     *
+     * @param address The address
+     */
+    public void set(InetAddress address) {
+        set(address.getAddress());
+    }
+
+    /**
+     * Loads an address that is already in binary form.
+     *
+     * @param address The 4 or 16 address bytes
+     * @throws IllegalArgumentException if the length is neither 4 nor 16
+     */
+    public void set(byte[] address) {
+        if (address.length == 4) {
+            high = 0;
+            low = IPV4_MAPPED_PREFIX | readInt(address, 0) & 0xFFFFFFFFL;
+        } else if (address.length == 16) {
+            high = (readInt(address, 0) & 0xFFFFFFFFL) << 32 | readInt(address, 4) & 0xFFFFFFFFL;
+            low = (readInt(address, 8) & 0xFFFFFFFFL) << 32 | readInt(address, 12) & 0xFFFFFFFFL;
+        } else {
+            throw new IllegalArgumentException("Invalid address length " + address.length);
+        }
+    }
+
+    /**
+     * @return true if the last parsed address is an IPv4 address
+     */
+    public boolean isIPv4() {
+        return high == 0 && (low >>> 32) == 0xFFFF;
+    }
+
+    /**
+     * @return The last parsed address as 4 bytes for IPv4 or 16 bytes for IPv6
+     */
+    public byte[] toBytes() {
+        if (isIPv4()) {
+            return new byte[]{(byte) (low >>> 24), (byte) (low >>> 16), (byte) (low >>> 8), (byte) low};
+        }
+
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Formats the last parsed address in its canonical form: dotted quad for IPv4,
+     * RFC 5952 for IPv6 (lower case, no leading zeros, longest zero run compressed).
+     *
+     * @return The canonical text
+     */
+    public String format() {
+        return format(high, low);
+    }
+
+    /**
+     * Checks whether a text is an IPv4 or IPv6 address literal.
+     *
+     * @param text The text
+     * @return true if the text is an address
+     */
+    public static boolean isValid(CharSequence text) {
+        return PARSERS.get().parse(text);
+    }
+
+    /**
+     * Brings an address literal into its canonical form, see {@link #format()}.
+     *
+     * @param text The address literal
+     * @return The canonical text
+     * @throws IllegalArgumentException if the text is not an address
+     */
+    public static String normalize(CharSequence text) {
+        IPAddressParser parser = PARSERS.get();
+        if (!parser.parse(text)) {
+            throw new IllegalArgumentException("Not an IP address: " + text);
+        }
+        return parser.format();
+    }
+
+    /**
+     * Formats an address in its canonical form, see {@link #format()}.
+     *
+     * @param address The address
+     * @return The canonical text
+     */
+    public static String format(InetAddress address) {
+        IPAddressParser parser = PARSERS.get();
+        parser.set(address);
+        return parser.format();
+    }
+
+    /**
+     * Formats a 128-bit address in its canonical form, see {@link #format()}.
+     *
+     * @param high The upper 64 bits
+     * @param low  The lower 64 bits
+     * @return The canonical text
+     */
+    public static String format(long high, long low) {
+        StringBuilder builder = new StringBuilder(39);
+
+        if (high == 0 && (low >>> 32) == 0xFFFF) {
+            appendIPv4(builder, (int) low);
+            return builder.toString();
+        }
+
+        // Find the longest run of at least two zero groups, the first one on a tie
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (group(high, low, i) != 0) {
+                i++;
+                continue;
+            }
+
+            int runStart = i;
+            while (i < 8 && group(high, low, i) == 0) {
+                i++;
+            }
+            if (i - runStart > bestLength) {
+                bestStart = runStart;
+                bestLength = i - runStart;
+            }
+        }
+
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(group(high, low, i)));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address.
+     *
+     * @return The address as an unsigned 32-bit value, or -1 if the range is not an IPv4 address
+     */
+    static long parseIPv4(CharSequence text, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+
+        while (true) {
+            int octetStart = i;
+            int value = 0;
+
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                i++;
+                if (i - octetStart > 3) {
+                    return -1;
+                }
+            }
+
+            int digits = i - octetStart;
+            if (digits == 0 || value > 255 || digits > 1 && text.charAt(octetStart) == '0') {
+                return -1;
+            }
+
+            address = address << 8 | value;
+            octets++;
+
+            if (i == end) {
+                return octets == 4 ? address : -1;
+            }
+            if (octets == 4 || text.charAt(i) != '.') {
+                return -1;
+            }
+            i++;
+        }
+    }
+
+    private boolean parseIPv6(CharSequence text, int start, int end) {
+        long resultHigh = 0;
+        long resultLow = 0;
+        int groups = 0;
+        int compressAt = -1;
+        int i = start;
+
+        if (end - start < 2) {
+            return false;
+        }
+
+        if (text.charAt(i) == ':') {
+            // Only "::" may start an address
+            if (text.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressAt = 0;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+
+            while (i < end) {
+                int digit = hexDigit(text.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                value = value << 4 | digit;
+                i++;
+            }
+
+            if (i < end && text.charAt(i) == '.') {
+                // A trailing dotted quad takes the last two groups
+                if (groups > 6) {
+                    return false;
+                }
+                long ipv4 = parseIPv4(text, groupStart, end);
+                if (ipv4 < 0) {
+                    return false;
+                }
+                resultHigh = resultHigh << 32 | resultLow >>> 32;
+                resultLow = resultLow << 32 | ipv4;
+                groups += 2;
+                i = end;
+                break;
+            }
+
+            int digits = i - groupStart;
+            if (digits == 0 || digits > 4 || groups == 8) {
+                return false;
+            }
+
+            resultHigh = resultHigh << 16 | resultLow >>> 48;
+            resultLow = resultLow << 16 | value;
+            groups++;
+
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+
+            if (i < end && text.charAt(i) == ':') {
+                if (compressAt >= 0) {
+                    return false;
+                }
+                compressAt = groups;
+                i++;
+            } else if (i == end) {
+                // A single trailing colon
+                return false;
+            }
+        }
+
+        if (compressAt < 0) {
+            if (groups != 8) {
+                return false;
+            }
+            high = resultHigh;
+            low = resultLow;
+            return true;
+        }
+
+        if (groups > 7) {
+            return false;
+        }
+
+        // Move the groups before "::" up to the top, the groups after it stay at the bottom
+        int tailGroups = groups - compressAt;
+        long tailHigh = tailGroups > 4 ? resultHigh & ((1L << (16 * (tailGroups - 4))) - 1) : 0;
+        long tailLow = tailGroups >= 4 ? resultLow : resultLow & ((1L << (16 * tailGroups)) - 1);
+
+        long headHigh = resultHigh;
+        long headLow = resultLow;
+        for (int shift = 0; shift < tailGroups; shift++) {
+            headLow = headLow >>> 16 | headHigh << 48;
+            headHigh >>>= 16;
+        }
+        for (int shift = 0; shift < 8 - compressAt; shift++) {
+            headHigh = headHigh << 16 | headLow >>> 48;
+            headLow <<= 16;
+        }
+
+        high = headHigh | tailHigh;
+        low = headLow | tailLow;
+        return true;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static int group(long high, long low, int index) {
+        return (int) ((index < 4 ? high >>> (48 - 16 * index) : low >>> (112 - 16 * index)) & 0xFFFF);
+    }
+
+    private static void appendIPv4(StringBuilder builder, int address) {
+        builder.append(address >>> 24 & 0xFF).append('.')
+                .append(address >>> 16 & 0xFF).append('.')
+                .append(address >>> 8 & 0xFF).append('.')
+                .append(address & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+}
@@ -0,0 +1,309 @@
+package dev.khanh.ipsecurity.ip;
+
+import dev.khanh.ipsecurity.util.PluginLogger;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable set of addresses and CIDR ranges a player may connect from.
+ * It is stored as its entries joined by commas, e.g. {@code 203.0.113.7,198.51.100.0/24,2001:db8::/48}.
+ * Entries are parsed once into 128-bit prefixes by {@link IPAddressParser}, IPv4 mapped into
+ * {@code ::ffff:0:0/96}, and matched with a {@link PrefixTrie}. Entries are kept in canonical form,
+ * so {@code 10.0.0.5/8} is stored as {@code 10.0.0.0/8} and {@code 2001:DB8:0::1} as {@code 2001:db8::1}.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class IPAllowlist {
+    /**
+     * Longest stored form, matching the width of the storage columns.
+     */
+    public static final int MAXIMUM_LENGTH = 1024;
+    public static final IPAllowlist EMPTY = new IPAllowlist(Collections.emptyList());
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+    private static final int MAXIMUM_CACHED = 4096;
+    private static final Map<String, IPAllowlist> CACHE = new ConcurrentHashMap<>();
+
+    private final List<Entry> entries;
+    private final PrefixTrie trie = new PrefixTrie();
+    private final String text;
+
+    private IPAllowlist(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+
+        StringJoiner joiner = new StringJoiner(",");
+        for (Entry entry : entries) {
+            trie.insert(entry.high, entry.low, entry.length);
+            joiner.add(entry.text);
+        }
+        this.text = joiner.toString();
+    }
+
+    /**
+     * Parses a stored allowlist.
+     *
+     * @param text The entries separated by commas or whitespace, may be null
+     * @return The allowlist
+     * @throws IllegalArgumentException if an entry is not an IP address or CIDR range, or the list is too long
+     */
+    public static IPAllowlist parse(@Nullable String text) {
+        if (text == null) {
+            return EMPTY;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (String token : text.split("[,\\s]+")) {
+            if (!token.isEmpty()) {
+                addUnique(entries, Entry.parse(token));
+            }
+        }
+
+        return create(entries);
+    }
+
+    /**
+     * Gets the allowlist of a stored value, parsing each distinct value only once.
+     * Malformed entries, e.g. from a hand-edited data file, are skipped with a warning.
+     *
+     * @param text The stored value, may be null
+     * @return The allowlist
+     */
+    public static IPAllowlist of(@Nullable String text) {
+        if (text == null) {
+            return EMPTY;
+        }
+
+        IPAllowlist allowlist = CACHE.get(text);
+        if (allowlist != null) {
+            return allowlist;
+        }
+
+        try {
+            allowlist = parse(text);
+        } catch (IllegalArgumentException e) {
+            PluginLogger.warning("Ignoring malformed entries in stored allowlist " + text + ": " + e.getMessage());
+
+            List<Entry> entries = new ArrayList<>();
+            for (String token : text.split("[,\\s]+")) {
+                try {
+                    if (!token.isEmpty()) {
+                        addUnique(entries, Entry.parse(token));
+                    }
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+            allowlist = new IPAllowlist(entries);
+        }
+
+        // Stored values only change on staff commands, so the cache barely grows
+        if (CACHE.size() >= MAXIMUM_CACHED) {
+            CACHE.clear();
+        }
+        CACHE.put(text, allowlist);
+
+        return allowlist;
+    }
+
+    /**
+     * Checks whether an address is allowed.
+     *
+     * @param address The address
+     * @return true if an entry covers the address
+     */
+    public boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+
+        if (bytes.length == 4) {
+            return trie.contains(0, IPV4_MAPPED_PREFIX | (readInt(bytes, 0) & 0xFFFFFFFFL));
+        }
+
+        return trie.contains(readLong(bytes, 0), readLong(bytes, 8));
+    }
+
+    /**
+     * Checks whether an address is allowed.
+     *
+     * @param high The upper 64 bits of the address, see {@link IPAddressParser}
+     * @param low  The lower 64 bits of the address
+     * @return true if an entry covers the address
+     */
+    public boolean contains(long high, long low) {
+        return trie.contains(high, low);
+    }
+
+    /**
+     * Returns this allowlist with another entry added.
+     *
+     * @param entry The address or CIDR range
+     * @return The new allowlist, or this one if the entry is already present
+     * @throws IllegalArgumentException if the entry is malformed or the list would become too long
+     */
+    public IPAllowlist with(String entry) {
+        List<Entry> copy = new ArrayList<>(entries);
+        if (!addUnique(copy, Entry.parse(entry.trim()))) {
+            return this;
+        }
+        return create(copy);
+    }
+
+    /**
+     * Returns this allowlist without an entry.
+     * The entry is matched by value, so {@code 10.0.0.1/8} removes {@code 10.0.0.0/8}
+     * and {@code ::ffff:10.0.0.1} removes {@code 10.0.0.1}.
+     *
+     * @param entry The address or CIDR range
+     * @return The new allowlist, or this one if the entry is not present
+     * @throws IllegalArgumentException if the entry is malformed
+     */
+    public IPAllowlist without(String entry) {
+        Entry removed = Entry.parse(entry.trim());
+
+        List<Entry> copy = new ArrayList<>(entries);
+        if (!copy.removeIf(existing -> existing.isSamePrefix(removed))) {
+            return this;
+        }
+        return copy.isEmpty() ? EMPTY : new IPAllowlist(copy);
+    }
+
+    /**
+     * @return true if no address is allowed
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The entries in insertion order, in canonical form
+     */
+    public List<String> getEntries() {
+        List<String> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.text);
+        }
+        return result;
+    }
+
+    /**
+     * @return The stored form, the entries joined by commas
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static IPAllowlist create(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+
+        IPAllowlist allowlist = new IPAllowlist(entries);
+        if (allowlist.text.length() > MAXIMUM_LENGTH) {
+            throw new IllegalArgumentException("Allowlist is longer than " + MAXIMUM_LENGTH + " characters");
+        }
+        return allowlist;
+    }
+
+    private static boolean addUnique(List<Entry> entries, Entry entry) {
+        for (Entry existing : entries) {
+            if (existing.isSamePrefix(entry)) {
+                return false;
+            }
+        }
+        return entries.add(entry);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (readInt(bytes, offset) & 0xFFFFFFFFL) << 32 | readInt(bytes, offset + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * One address or CIDR range, as a 128-bit prefix.
+     */
+    private static final class Entry {
+        private final String text;
+        private final long high;
+        private final long low;
+        private final int length;
+
+        private Entry(String text, long high, long low, int length) {
+            this.text = text;
+            this.high = high & PrefixTrie.highMask(length);
+            this.low = low & PrefixTrie.lowMask(length);
+            this.length = length;
+        }
+
+        private static Entry parse(String text) {
+            int slash = text.indexOf('/');
+            int addressEnd = slash < 0 ? text.length() : slash;
+
+            IPAddressParser parser = new IPAddressParser();
+            if (!parser.parse(text, 0, addressEnd)) {
+                throw new IllegalArgumentException("Not an IP address: " + text);
+            }
+
+            // Prefix lengths of IPv4 ranges count from the mapped prefix
+            boolean ipv4 = parser.isIPv4() && text.lastIndexOf(':', addressEnd) < 0;
+            int offset = ipv4 ? 96 : 0;
+
+            int length = 128;
+            if (slash >= 0) {
+                length = parsePrefixLength(text, slash + 1);
+                if (length < 0 || length + offset > 128) {
+                    throw new IllegalArgumentException("Invalid prefix length in " + text);
+                }
+                length += offset;
+            }
+
+            long high = parser.getHigh() & PrefixTrie.highMask(length);
+            long low = parser.getLow() & PrefixTrie.lowMask(length);
+
+            // The stored form is canonical, so equal ranges are always written the same way
+            String canonical;
+            if (length == 128) {
+                canonical = IPAddressParser.format(high, low);
+            } else if (length >= 96 && (high == 0 && (low >>> 32) == 0xFFFF)) {
+                canonical = IPAddressParser.format(high, low) + "/" + (length - 96);
+            } else {
+                canonical = IPAddressParser.format(high, low) + "/" + length;
+            }
+
+            return new Entry(canonical, high, low, length);
+        }
+
+        private static int parsePrefixLength(String text, int start) {
+            int end = text.length();
+            if (start == end || end - start > 3) {
+                return -1;
+            }
+
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        private boolean isSamePrefix(Entry other) {
+            return high == other.high && low == other.low && length == other.length;
+        }
+    }
+}
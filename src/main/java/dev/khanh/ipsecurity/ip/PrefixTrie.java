@@ -0,0 +1,139 @@
+package dev.khanh.ipsecurity.ip;
+
+/**
+ * Path-compressed binary radix trie of 128-bit prefixes.
+ * Every node stores its whole prefix, so a lookup compares at most one node per branch
+ * with two masked XORs instead of walking the address bit by bit.
+ * The trie is filled once and only read afterwards.
+ *
+ * @author KhanhHuynh1402
+ */
+final class PrefixTrie {
+    private final Node root = new Node(0, 0, 0);
+
+    /**
+     * Adds a prefix.
+     *
+     * @param high   The upper 64 bits of the prefix
+     * @param low    The lower 64 bits of the prefix
+     * @param length The prefix length, between 0 and 128
+     */
+    void insert(long high, long low, int length) {
+        high &= highMask(length);
+        low &= lowMask(length);
+
+        Node node = root;
+        while (true) {
+            if (node.length == length) {
+                node.terminal = true;
+                return;
+            }
+
+            int bit = bitAt(high, low, node.length);
+            Node child = node.children[bit];
+
+            if (child == null) {
+                node.children[bit] = new Node(high, low, length).markTerminal();
+                return;
+            }
+
+            int common = Math.min(commonPrefixLength(high, low, child.high, child.low), Math.min(length, child.length));
+
+            if (common == child.length) {
+                node = child;
+                continue;
+            }
+
+            // The new prefix leaves the child's edge part way, so split the edge at the shared bits
+            Node split = new Node(high & highMask(common), low & lowMask(common), common);
+            split.children[bitAt(child.high, child.low, common)] = child;
+
+            if (common == length) {
+                split.terminal = true;
+            } else {
+                split.children[bitAt(high, low, common)] = new Node(high, low, length).markTerminal();
+            }
+
+            node.children[bit] = split;
+            return;
+        }
+    }
+
+    /**
+     * Checks whether an address falls inside any stored prefix.
+     *
+     * @param high The upper 64 bits of the address
+     * @param low  The lower 64 bits of the address
+     * @return true if a stored prefix covers the address
+     */
+    boolean contains(long high, long low) {
+        Node node = root;
+
+        while (node != null) {
+            if (((high ^ node.high) & node.highMask) != 0 || ((low ^ node.low) & node.lowMask) != 0) {
+                return false;
+            }
+
+            if (node.terminal) {
+                return true;
+            }
+
+            if (node.length == 128) {
+                return false;
+            }
+
+            node = node.children[bitAt(high, low, node.length)];
+        }
+
+        return false;
+    }
+
+    private static int bitAt(long high, long low, int index) {
+        return index < 64 ? (int) (high >>> (63 - index)) & 1 : (int) (low >>> (127 - index)) & 1;
+    }
+
+    private static int commonPrefixLength(long high1, long low1, long high2, long low2) {
+        long difference = high1 ^ high2;
+        if (difference != 0) {
+            return Long.numberOfLeadingZeros(difference);
+        }
+        return 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+    }
+
+    static long highMask(int length) {
+        if (length <= 0) {
+            return 0;
+        }
+        return length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    static long lowMask(int length) {
+        if (length <= 64) {
+            return 0;
+        }
+        return length >= 128 ? -1L : -1L << (128 - length);
+    }
+
+    private static final class Node {
+        private final long high;
+        private final long low;
+        private final long highMask;
+        private final long lowMask;
+        private final int length;
+        private final Node[] children = new Node[2];
+        private boolean terminal;
+
+        private Node(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.highMask = highMask(length);
+            this.lowMask = lowMask(length);
+        }
+
+        private Node markTerminal() {
+            terminal = true;
+            return this;
+        }
+    }
+}
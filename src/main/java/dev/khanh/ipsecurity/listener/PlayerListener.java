@@ -2,14 +2,27 @@ package dev.khanh.ipsecurity.listener;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
 import dev.khanh.ipsecurity.file.Messages;
+import dev.khanh.ipsecurity.ip.IPAddressParser;
+import dev.khanh.ipsecurity.ip.IPAllowlist;
 import dev.khanh.ipsecurity.task.PlayerSecurityChecker;
+import dev.khanh.ipsecurity.task.ValidationResult;
+import dev.khanh.ipsecurity.util.PluginLogger;
 import dev.khanh.ipsecurity.util.TaskUtil;
 import lombok.Getter;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A listener class to handle events related to player events.
@@ -18,7 +31,13 @@ import org.bukkit.event.player.PlayerJoinEvent;
  */
 @Getter
 public class PlayerListener implements Listener {
+    /**
+     * How long a stored IP fetched at pre-login is trusted by the join check.
+     */
+    private static final long PREFETCH_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private final IPSecurityPlugin plugin;
+    private final Map<UUID, PrefetchedIP> prefetchedIPs = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new PlayerListener.
@@ -29,6 +48,49 @@ public class PlayerListener implements Listener {
         this.plugin = plugin;
     }
 
+    /**
+     * Handles the AsyncPlayerPreLoginEvent.
+     * The stored IP is fetched here, off the main thread, so the join check is a memory lookup.
+     *
+     * @param event The AsyncPlayerPreLoginEvent instance.
+     */
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED || plugin.getChecker() == null) {
+            return;
+        }
+
+        purgeExpiredPrefetches();
+
+        String storedIP;
+        try {
+            storedIP = plugin.getDataStorage().getPlayerIP(event.getName()).join();
+        } catch (Exception e) {
+            PluginLogger.severe("Unable to prefetch IP of " + event.getName() + ": " + e.getMessage());
+            return;
+        }
+
+        String ip = IPAddressParser.format(event.getAddress());
+
+        // Op state is read from the op list snapshot, this event is not on the main thread
+        PrivilegeChangeListener privilegeChangeListener = plugin.getPrivilegeChangeListener();
+
+        if (plugin.getSettings().isPreLoginRejectEnable() && plugin.getSettings().isCheckOp() && privilegeChangeListener != null
+                && privilegeChangeListener.isOperator(event.getUniqueId()) && !IPAllowlist.of(storedIP).contains(event.getAddress())) {
+
+            Messages messages = plugin.getMessages();
+            event.disallow(
+                    AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                    ChatColor.translateAlternateColorCodes('&', messages.getKickMessage())
+            );
+            plugin.getMetrics().getPreLoginKicks().increment();
+            plugin.getChecker().sendInvalidNotification(messages.getInvalidMessageEmbed(event.getName(), ip), event.getName(), ip);
+            return;
+        }
+
+        prefetchedIPs.put(event.getUniqueId(), new PrefetchedIP(storedIP, System.nanoTime()));
+    }
+
     /**
      * Handles the PlayerJoinEvent.
      *
@@ -37,27 +99,66 @@ public class PlayerListener implements Listener {
     @EventHandler
     public void onJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        PlayerSecurityChecker checker = plugin.getChecker();
+
+        if (checker == null) {
+            return;
+        }
+
+        PrefetchedIP prefetched = prefetchedIPs.remove(player.getUniqueId());
+        long start = System.nanoTime();
+
+        if (prefetched != null && !prefetched.isExpired(start)) {
+            handleResult(player, checker.validate(player, prefetched.storedIP));
+            plugin.getMetrics().recordMainThread(start);
+            return;
+        }
 
         plugin.getScheduler().runTaskLater(player, () -> {
             if (!player.isOnline()) {
                 return;
             }
 
-            PlayerSecurityChecker checker = plugin.getChecker();
-
-            TaskUtil.runAsync(() -> {
-                if (!checker.isValidPlayer(player)) {
-                    checker.handleInvalidPlayer(player);
-                } else {
-                    if (checker.isShouldValidate(player) && plugin.getSettings().isSendValidMessage()) {
-                        handleValidPlayer(player);
-                    }
-                }
-            });
+            TaskUtil.runAsync(() -> handleResult(player, checker.validate(player)));
         }, 20L);
 
     }
 
+    /**
+     * Handles the PlayerQuitEvent.
+     *
+     * @param event The PlayerQuitEvent instance.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        prefetchedIPs.remove(event.getPlayer().getUniqueId());
+
+        if (plugin.getChecker() != null) {
+            plugin.getChecker().getVerificationCache().invalidate(event.getPlayer().getName());
+            plugin.getChecker().getPermissionCache().invalidate(event.getPlayer().getUniqueId());
+        }
+    }
+
+    /**
+     * Handles the PlayerChangedWorldEvent, since permissions can be per world.
+     *
+     * @param event The PlayerChangedWorldEvent instance.
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        if (plugin.getChecker() != null) {
+            plugin.getChecker().getPermissionCache().invalidate(event.getPlayer().getUniqueId());
+        }
+    }
+
+    private void handleResult(Player player, ValidationResult result) {
+        if (result == ValidationResult.INVALID) {
+            plugin.getChecker().handleInvalidPlayer(player);
+        } else if (result == ValidationResult.VALID && plugin.getSettings().isSendValidMessage()) {
+            handleValidPlayer(player);
+        }
+    }
+
     /**
      * Handles a valid player.
      *
@@ -67,6 +168,29 @@ public class PlayerListener implements Listener {
         Messages messages = plugin.getMessages();
 
         player.sendMessage(ChatColor.translateAlternateColorCodes('&', messages.getVerifiedMessage()));
-        TaskUtil.runAsync(() -> plugin.getDiscordBot().sendNotification(messages.getVerifiedMessageEmbed(player)));
+        TaskUtil.runAsync(() -> plugin.getDiscordBot().sendNotification(
+                messages.getVerifiedMessageEmbed(player), null, player.getName(), "verified:" + player.getName()));
+    }
+
+    /**
+     * Drops prefetches of connections that never reached the join, e.g. denied by another plugin.
+     */
+    private void purgeExpiredPrefetches() {
+        long now = System.nanoTime();
+        prefetchedIPs.values().removeIf(prefetched -> prefetched.isExpired(now));
+    }
+
+    private static final class PrefetchedIP {
+        private final String storedIP;
+        private final long fetchedAt;
+
+        private PrefetchedIP(String storedIP, long fetchedAt) {
+            this.storedIP = storedIP;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - fetchedAt >= PREFETCH_TTL_NANOS;
+        }
     }
 }
@@ -0,0 +1,151 @@
+package dev.khanh.ipsecurity.listener;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.task.PlayerSecurityChecker;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Revalidates a player as soon as their privileges may have changed, instead of
+ * waiting for the next periodic sweep.
+ *
+ * @author KhanhHuynh1402
+ */
+public class PrivilegeChangeListener implements Listener {
+    @Getter
+    private final IPSecurityPlugin plugin;
+    private final PlayerSecurityChecker checker;
+    private final MyScheduledTask opWatcherTask;
+    /**
+     * The op list as of the last diff, replaced and never modified so it can be read from any thread.
+     */
+    private volatile Set<UUID> operators;
+
+    /**
+     * Constructs a new PrivilegeChangeListener.
+     *
+     * @param plugin The IPSecurityPlugin instance.
+     */
+    public PrivilegeChangeListener(IPSecurityPlugin plugin) {
+        this.plugin = plugin;
+        this.checker = plugin.getChecker();
+        this.operators = getOperatorIds();
+
+        // Ops can also change from other plugins or ops.json, so the op list is diffed every second
+        opWatcherTask = plugin.getScheduler().runTaskTimer(this::diffOperators, 20, 20);
+
+        // LuckPerms recalculations are handled by the plugin, after it drops the cached permissions
+    }
+
+    /**
+     * Handles the PlayerGameModeChangeEvent.
+     *
+     * @param event The PlayerGameModeChangeEvent instance.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+        Player player = event.getPlayer();
+
+        // The new gamemode is applied after the event, so check on the next tick
+        plugin.getScheduler().runTaskLater(player, () -> checker.revalidate(player), 1L);
+    }
+
+    /**
+     * Handles the PlayerChangedWorldEvent, since permissions can be per world.
+     *
+     * @param event The PlayerChangedWorldEvent instance.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        checker.revalidate(event.getPlayer());
+    }
+
+    /**
+     * Handles the PlayerCommandPreprocessEvent to react to op and deop commands immediately.
+     *
+     * @param event The PlayerCommandPreprocessEvent instance.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        handleCommand(event.getMessage().startsWith("/") ? event.getMessage().substring(1) : event.getMessage());
+    }
+
+    /**
+     * Handles the ServerCommandEvent to react to op and deop commands immediately.
+     *
+     * @param event The ServerCommandEvent instance.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onServerCommand(ServerCommandEvent event) {
+        handleCommand(event.getCommand());
+    }
+
+    /**
+     * Checks the op list as of the last diff, which is at most a second old.
+     * Unlike {@link OfflinePlayer#isOp()} this is safe off the main thread and never looks up a profile.
+     *
+     * @param uuid The UUID of the player.
+     * @return true if the player was an operator at the last diff.
+     */
+    public boolean isOperator(UUID uuid) {
+        return operators.contains(uuid);
+    }
+
+    /**
+     * Cancels the op watcher task.
+     */
+    public void cancel() {
+        opWatcherTask.cancel();
+    }
+
+    private void handleCommand(String command) {
+        String label = command.split(" ", 2)[0].toLowerCase(Locale.ROOT);
+        label = label.substring(label.indexOf(':') + 1);
+
+        if (label.equals("op") || label.equals("deop")) {
+            // The command runs after this event, so diff the op list on the next tick
+            plugin.getScheduler().runTaskLater(this::diffOperators, 1L);
+        }
+    }
+
+    private void diffOperators() {
+        long start = System.nanoTime();
+        Set<UUID> current = getOperatorIds();
+
+        for (UUID uuid : current) {
+            if (!operators.contains(uuid)) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null) {
+                    checker.revalidate(player);
+                }
+            }
+        }
+
+        operators = current;
+        plugin.getMetrics().recordMainThread(start);
+    }
+
+    private Set<UUID> getOperatorIds() {
+        Set<UUID> ids = new HashSet<>();
+        for (OfflinePlayer operator : Bukkit.getOperators()) {
+            ids.add(operator.getUniqueId());
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+}
@@ -0,0 +1,116 @@
+package dev.khanh.ipsecurity.metrics;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.sun.net.httpserver.HttpServer;
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.util.PluginLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Publishes the plugin metrics in the Prometheus text format, to a file written
+ * periodically and/or from a local HTTP endpoint. Both are opt-in.
+ *
+ * @author KhanhHuynh1402
+ */
+public class MetricsExporter {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final File file;
+    private MyScheduledTask fileTask;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+
+    /**
+     * Constructs and starts a new MetricsExporter.
+     *
+     * @param plugin The IPSecurityPlugin instance.
+     */
+    public MetricsExporter(IPSecurityPlugin plugin) {
+        Settings settings = plugin.getSettings();
+        this.registry = plugin.getMetrics().getRegistry();
+        this.file = new File(plugin.getDataFolder(), "metrics.prom");
+
+        if (settings.isMetricsFileEnable()) {
+            long period = settings.getMetricsFileInterval() * 20L;
+            fileTask = plugin.getScheduler().runTaskTimerAsynchronously(this::writeFile, period, period);
+        }
+
+        if (settings.isMetricsHttpEnable()) {
+            startHttpServer(settings.getMetricsHttpHost(), settings.getMetricsHttpPort());
+        }
+    }
+
+    /**
+     * Stops the export and writes the file one last time.
+     */
+    public void shutdown() {
+        if (fileTask != null) {
+            fileTask.cancel();
+            writeFile();
+        }
+
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    private void writeFile() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            // Scrapers such as the node exporter textfile collector must never see a half written file
+            Files.write(tempFile.toPath(), registry.toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            PluginLogger.severe("Unable to write metrics.prom: " + e.getMessage());
+        }
+    }
+
+    private void startHttpServer(String host, int port) {
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            PluginLogger.severe(String.format("Unable to start the metrics endpoint on %s:%d: %s", host, port, e.getMessage()));
+            return;
+        }
+
+        httpServer.createContext("/metrics", exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                byte[] body = registry.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+
+        httpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IPSecurity-Metrics-HTTP");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        PluginLogger.info(String.format("Serving metrics on http://%s:%d/metrics", host, port));
+    }
+}
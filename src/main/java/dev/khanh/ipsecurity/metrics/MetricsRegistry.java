@@ -0,0 +1,166 @@
+package dev.khanh.ipsecurity.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named metrics that renders them in the Prometheus text format.
+ * Registering a metric that already exists returns the existing one, so callers
+ * do not need to keep references around.
+ *
+ * @author KhanhHuynh1402
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Gets or registers a counter.
+     *
+     * @param name   The metric name
+     * @param help   The metric description
+     * @param labels Label names and values, alternating
+     * @return The counter
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) register(name, help, "counter", labels, LongAdder::new);
+    }
+
+    /**
+     * Registers a counter whose value is read from elsewhere.
+     *
+     * @param name     The metric name
+     * @param help     The metric description
+     * @param supplier Supplies the current value
+     * @param labels   Label names and values, alternating
+     */
+    public void counter(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, help, "counter", labels, () -> supplier);
+    }
+
+    /**
+     * Registers a gauge.
+     *
+     * @param name     The metric name
+     * @param help     The metric description
+     * @param supplier Supplies the current value, NaN if it is unknown
+     * @param labels   Label names and values, alternating
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, help, "gauge", labels, () -> supplier);
+    }
+
+    /**
+     * Gets or registers a latency histogram, exported as a summary in seconds.
+     *
+     * @param name   The metric name
+     * @param help   The metric description
+     * @param labels Label names and values, alternating
+     * @return The histogram
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, "summary", labels, LatencyHistogram::new);
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     *
+     * @return The rendered metrics
+     */
+    public synchronized String toPrometheus() {
+        StringBuilder builder = new StringBuilder(4096);
+
+        for (Family family : families.values()) {
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+
+                if (metric instanceof LatencyHistogram) {
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    for (double quantile : QUANTILES) {
+                        String quantileLabel = "quantile=\"" + quantile + "\"";
+                        appendSample(builder, family.name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                                toSeconds(histogram.getQuantile(quantile)));
+                    }
+                    appendSample(builder, family.name + "_sum", labels, toSeconds(histogram.getSum()));
+                    appendSample(builder, family.name + "_count", labels, histogram.getCount());
+                } else if (metric instanceof LongAdder) {
+                    appendSample(builder, family.name, labels, ((LongAdder) metric).sum());
+                } else {
+                    appendSample(builder, family.name, labels, ((DoubleSupplier) metric).getAsDouble());
+                }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private synchronized Object register(String name, String help, String type, String[] labels, Supplier<Object> factory) {
+        Preconditions.checkArgument(labels.length % 2 == 0, "Labels must be name and value pairs");
+
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        Preconditions.checkArgument(family.type.equals(type), "Metric " + name + " is already registered as a " + family.type);
+
+        return family.metrics.computeIfAbsent(formatLabels(labels), key -> factory.get());
+    }
+
+    private static String formatLabels(String[] labels) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return builder.toString();
+    }
+
+    private static void appendSample(StringBuilder builder, String name, String labels, double value) {
+        builder.append(name);
+        if (!labels.isEmpty()) {
+            builder.append('{').append(labels).append('}');
+        }
+        builder.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1_000_000_000D;
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
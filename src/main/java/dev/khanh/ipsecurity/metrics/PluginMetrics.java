@@ -0,0 +1,155 @@
+package dev.khanh.ipsecurity.metrics;
+
+import dev.khanh.ipsecurity.IPSecurityPlugin;
+import dev.khanh.ipsecurity.bot.CircuitBreaker;
+import dev.khanh.ipsecurity.bot.DiscordBot;
+import dev.khanh.ipsecurity.bot.NotificationQueue;
+import dev.khanh.ipsecurity.data.CachingDataStorage;
+import dev.khanh.ipsecurity.data.DataStorage;
+import dev.khanh.ipsecurity.data.MySQLStorage;
+import dev.khanh.ipsecurity.data.SQLiteStorage;
+import dev.khanh.ipsecurity.data.StorageExecutor;
+import dev.khanh.ipsecurity.task.PlayerSecurityChecker;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The metrics collected by the plugin.
+ * Hot paths record into lock-free counters and histograms, everything else is
+ * read from the owning component when the metrics are exported.
+ *
+ * @author KhanhHuynh1402
+ */
+@Getter
+public class PluginMetrics {
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final LatencyHistogram sweepSliceLatency = registry.histogram(
+            "ipsecurity_sweep_slice_seconds", "Time spent checking one slice of the periodic sweep");
+    private final LatencyHistogram sweepLatency = registry.histogram(
+            "ipsecurity_sweep_seconds", "Time spent checking over one full periodic sweep");
+    private final LongAdder playersChecked = registry.counter(
+            "ipsecurity_players_checked_total", "Players checked by the periodic sweep");
+    private final LongAdder playersSkipped = registry.counter(
+            "ipsecurity_players_skipped_total", "Players skipped by the periodic sweep since nothing changed since their last verification");
+    private final LongAdder checkKicks = registry.counter(
+            "ipsecurity_kicks_total", "Players kicked for connecting from an unknown IP", "stage", "check");
+    private final LongAdder preLoginKicks = registry.counter(
+            "ipsecurity_kicks_total", "Players kicked for connecting from an unknown IP", "stage", "pre_login");
+    private final LongAdder mainThreadNanos = new LongAdder();
+    private final LatencyHistogram notificationSendLatency = registry.histogram(
+            "ipsecurity_notification_send_seconds", "Time until Discord accepted a notification message");
+
+    /**
+     * Constructs a new PluginMetrics.
+     */
+    public PluginMetrics() {
+        registry.counter("ipsecurity_main_thread_seconds_total", "Server thread time used by the plugin",
+                () -> mainThreadNanos.sum() / 1_000_000_000D);
+    }
+
+    /**
+     * Gets the latency histogram of a storage operation.
+     *
+     * @param backend   The storage backend
+     * @param operation The operation
+     * @return The histogram
+     */
+    public LatencyHistogram getStorageLatency(String backend, String operation) {
+        return registry.histogram("ipsecurity_storage_operation_seconds", "Storage operation latency",
+                "backend", backend, "operation", operation);
+    }
+
+    /**
+     * Adds the server thread time used since the given start.
+     *
+     * @param startNanos The start, from {@link System#nanoTime()}
+     */
+    public void recordMainThread(long startNanos) {
+        mainThreadNanos.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Registers the gauges read from the plugin components.
+     * Must be called once the storage and Discord bot are set up.
+     *
+     * @param plugin The IPSecurityPlugin instance.
+     */
+    public void registerComponents(IPSecurityPlugin plugin) {
+        StorageExecutor executor = plugin.getStorageExecutor();
+        registry.gauge("ipsecurity_storage_executor_queue_depth", "Storage tasks waiting for a thread",
+                executor::getQueueDepth);
+        registry.gauge("ipsecurity_storage_executor_active", "Storage tasks running",
+                executor::getActiveCount);
+        registry.counter("ipsecurity_storage_executor_rejected_total", "Storage tasks rejected by a full queue",
+                executor::getRejectedCount);
+
+        DataStorage storage = plugin.getDataStorage();
+        if (storage instanceof CachingDataStorage) {
+            CachingDataStorage cache = (CachingDataStorage) storage;
+            registry.counter("ipsecurity_cache_hits_total", "Lookups answered from the cache", cache::getHitCount);
+            registry.counter("ipsecurity_cache_misses_total", "Lookups that went to the backend", cache::getMissCount);
+            registry.gauge("ipsecurity_cache_size", "Players currently cached", cache::size);
+            registry.gauge("ipsecurity_cache_hit_ratio", "Share of lookups answered from the cache",
+                    () -> getCacheHitRatio(plugin));
+        }
+
+        PlayerSecurityChecker checker = plugin.getChecker();
+        if (checker != null) {
+            registry.gauge("ipsecurity_verification_cache_size", "Players whose last verification is remembered",
+                    checker.getVerificationCache()::size);
+            registry.gauge("ipsecurity_permission_cache_size", "Players whose checked permissions are remembered",
+                    checker.getPermissionCache()::size);
+            registry.gauge("ipsecurity_sweep_pending_players", "Players reported by the sweep and waiting for the storage lookup",
+                    checker.getAggregator()::size);
+        }
+
+        DataStorage backend = plugin.getBackendStorage();
+        if (backend instanceof MySQLStorage) {
+            MySQLStorage mysql = (MySQLStorage) backend;
+            registry.gauge("ipsecurity_mysql_connections", "MySQL pool connections", () -> mysql.getPoolStats().getActiveConnections(), "state", "active");
+            registry.gauge("ipsecurity_mysql_connections", "MySQL pool connections", () -> mysql.getPoolStats().getIdleConnections(), "state", "idle");
+            registry.gauge("ipsecurity_mysql_threads_awaiting_connection", "Threads waiting for a MySQL connection",
+                    () -> mysql.getPoolStats().getThreadsAwaitingConnection());
+        } else if (backend instanceof SQLiteStorage) {
+            registry.gauge("ipsecurity_sqlite_pending_writes", "Writes waiting for the SQLite writer thread",
+                    ((SQLiteStorage) backend)::getPendingWrites);
+        }
+
+        registry.gauge("ipsecurity_notification_queue_depth", "Discord notifications waiting to be sent",
+                () -> readQueue(plugin, NotificationQueue::getQueueDepth));
+        registry.counter("ipsecurity_notifications_dropped_total", "Discord notifications dropped by a full queue",
+                () -> readQueue(plugin, NotificationQueue::getDroppedCount));
+        registry.counter("ipsecurity_notifications_merged_total", "Discord notifications merged into a queued duplicate",
+                () -> readQueue(plugin, NotificationQueue::getDuplicateCount));
+        registry.counter("ipsecurity_notification_messages_sent_total", "Discord messages sent",
+                () -> readQueue(plugin, NotificationQueue::getSentMessageCount));
+        registry.gauge("ipsecurity_notification_spool_bytes", "Size of the undelivered notifications on disk",
+                () -> readQueue(plugin, queue -> queue.getSpool() == null ? Double.NaN : queue.getSpool().getPendingBytes()));
+        registry.gauge("ipsecurity_notification_spool_records", "Undelivered notifications on disk",
+                () -> readQueue(plugin, queue -> queue.getSpool() == null ? Double.NaN : queue.getSpool().getPendingRecords()));
+        registry.gauge("ipsecurity_notification_circuit_open", "1 while sending is suspended after repeated failures",
+                () -> readQueue(plugin, queue -> queue.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN ? 1 : 0));
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     *
+     * @param plugin The IPSecurityPlugin instance.
+     * @return The hit ratio, NaN if there were no lookups or the cache is disabled
+     */
+    public double getCacheHitRatio(IPSecurityPlugin plugin) {
+        if (!(plugin.getDataStorage() instanceof CachingDataStorage)) {
+            return Double.NaN;
+        }
+        CachingDataStorage cache = (CachingDataStorage) plugin.getDataStorage();
+        long total = cache.getHitCount() + cache.getMissCount();
+        return total == 0 ? Double.NaN : (double) cache.getHitCount() / total;
+    }
+
+    private static double readQueue(IPSecurityPlugin plugin, ToDoubleFunction<NotificationQueue> reader) {
+        DiscordBot bot = plugin.getDiscordBot();
+        return bot == null || bot.getNotificationQueue() == null ? Double.NaN : reader.applyAsDouble(bot.getNotificationQueue());
+    }
+}
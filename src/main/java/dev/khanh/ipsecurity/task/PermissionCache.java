@@ -0,0 +1,122 @@
+package dev.khanh.ipsecurity.task;
+
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, per online player, which of the checked permissions they have, as a bitset indexed by
+ * the position of the permission in the configured list. Permission plugins can make
+ * {@link Player#hasPermission(String)} expensive, so the periodic sweep only tests bits.
+ * <p>
+ * An entry is dropped when the player quits, changes world or LuckPerms recalculates their permissions,
+ * and read again when their op status changes. Permission attachments change without any event,
+ * so entries are also read again once they are older than the refresh interval.
+ *
+ * @author KhanhHuynh1402
+ */
+public class PermissionCache {
+    private static final long[] NONE = new long[0];
+
+    private final List<String> permissions;
+    private final long refreshNanos;
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new PermissionCache.
+     *
+     * @param permissions    The checked permissions, in configured order
+     * @param refreshSeconds Seconds after which an entry is read again, 0 to only rely on invalidation
+     */
+    public PermissionCache(List<String> permissions, long refreshSeconds) {
+        this.permissions = permissions;
+        this.refreshNanos = refreshSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Gets the checked permissions of a player, reading them only if no current entry exists.
+     * Bit {@code i} of word {@code i / 64} is set if the player has the {@code i}-th checked permission.
+     *
+     * @param player The player
+     * @return The bitset, shared and must not be modified
+     */
+    public long[] getMatched(Player player) {
+        Entry entry = entries.get(player.getUniqueId());
+        long now = System.nanoTime();
+
+        if (entry == null || entry.op != player.isOp() || refreshNanos > 0 && now - entry.readAt >= refreshNanos) {
+            return read(player, now);
+        }
+
+        return entry.matched;
+    }
+
+    /**
+     * Reads the checked permissions of a player and replaces their entry.
+     *
+     * @param player The player
+     * @return The bitset, shared and must not be modified
+     */
+    public long[] refresh(Player player) {
+        return read(player, System.nanoTime());
+    }
+
+    /**
+     * Drops the entry of a player.
+     *
+     * @param uuid The UUID of the player
+     */
+    public void invalidate(UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * @return The number of players with an entry
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param matched A bitset returned by this cache
+     * @return true if at least one bit is set
+     */
+    public static boolean isAnySet(long[] matched) {
+        for (long word : matched) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] read(Player player, long now) {
+        // Read op first, so an op change during the permission reads leaves a mismatching entry
+        boolean op = player.isOp();
+        long[] matched = permissions.isEmpty() ? NONE : new long[(permissions.size() + 63) >>> 6];
+
+        for (int i = 0; i < permissions.size(); i++) {
+            if (player.hasPermission(permissions.get(i))) {
+                matched[i >>> 6] |= 1L << i;
+            }
+        }
+
+        entries.put(player.getUniqueId(), new Entry(matched, op, now));
+        return matched;
+    }
+
+    private static final class Entry {
+        private final long[] matched;
+        private final boolean op;
+        private final long readAt;
+
+        private Entry(long[] matched, boolean op, long readAt) {
+            this.matched = matched;
+            this.op = op;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -1,37 +1,75 @@
 package dev.khanh.ipsecurity.task;
 
+import com.github.Anon8281.universalScheduler.UniversalScheduler;
 import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
 import dev.khanh.ipsecurity.IPSecurityPlugin;
 import dev.khanh.ipsecurity.bot.DiscordBot;
-import dev.khanh.ipsecurity.bot.listener.ButtonData;
+import dev.khanh.ipsecurity.data.MySQLStorage;
 import dev.khanh.ipsecurity.file.Messages;
 import dev.khanh.ipsecurity.file.Settings;
+import dev.khanh.ipsecurity.ip.IPAddressParser;
+import dev.khanh.ipsecurity.ip.IPAllowlist;
+import dev.khanh.ipsecurity.metrics.PluginMetrics;
+import dev.khanh.ipsecurity.util.PluginLogger;
 import dev.khanh.ipsecurity.util.TaskUtil;
 import lombok.Getter;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
-import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
-import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.GameMode;
 import org.bukkit.entity.Player;
 
-import java.util.Objects;
-import java.util.UUID;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A task responsible for periodically checking player security.
+ * The online players are split into slices and one slice is checked per tick across the
+ * interval, so every player is still checked once per interval while the load stays flat.
+ * <p>
+ * On Folia the state of a player may only be read on the region that owns them, so each player of a
+ * slice is checked on their own entity scheduler and regions are checked in parallel. The players that
+ * need a lookup are reported to a {@link SweepAggregator}, which every slice drains into one batch lookup.
  *
  * @author KhanhHuynh1402
  */
 public class PlayerSecurityChecker implements Runnable {
+    /**
+     * Bit set in a privilege fingerprint when the player has to be validated.
+     */
+    public static final long PRIVILEGED = 1;
+
     @Getter
     private final IPSecurityPlugin plugin;
     @Getter
     private final MyScheduledTask task;
     private final DiscordBot bot;
     private final Settings settings;
+    private final Set<UUID> pendingRevalidations = ConcurrentHashMap.newKeySet();
+    @Getter
+    private final VerificationCache verificationCache;
+    @Getter
+    private final PermissionCache permissionCache;
+    @Getter
+    private final SweepAggregator aggregator = new SweepAggregator();
+    private final boolean regionized;
+    @Getter
+    private final int interval;
+    private final Deque<Player> sweepQueue = new ArrayDeque<>();
+    private int sweepTick;
+    private int sweepPlayers;
+    private long sweepMaxSliceNanos;
+    private long sweepBusyNanos;
+    @Getter
+    private volatile long lastSliceNanos;
+    @Getter
+    private volatile long lastSweepMaxSliceNanos;
 
     /**
      * Constructs a new PlayerSecurityChecker.
@@ -39,126 +77,378 @@ public class PlayerSecurityChecker implements Runnable {
      * @param plugin The {@link IPSecurityPlugin} instance.
      */
     public PlayerSecurityChecker(IPSecurityPlugin plugin) {
+        this(plugin, UniversalScheduler.isFolia);
+    }
+
+    /**
+     * Constructs a new PlayerSecurityChecker.
+     *
+     * @param plugin     The {@link IPSecurityPlugin} instance.
+     * @param regionized Whether players are checked on their own entity scheduler, as Folia requires.
+     */
+    PlayerSecurityChecker(IPSecurityPlugin plugin, boolean regionized) {
         this.plugin = plugin;
+        this.regionized = regionized;
         this.bot = plugin.getDiscordBot();
         this.settings = plugin.getSettings();
+        this.verificationCache = new VerificationCache(plugin.getVersionedStorage(), getVerificationMaximumAge(plugin));
+        this.permissionCache = new PermissionCache(settings.getCheckPermissions(), settings.getPermissionCacheRefreshAfter());
 
-        task = plugin.getScheduler().runTaskTimerAsynchronously(
-                this,
-                0,
-                plugin.getSettings().getProtectInterval()
-        );
+        // In event-driven mode changes are caught as they happen, so the sweep is only a safety net
+        interval = settings.isEventDrivenProtectEnable() ? settings.getSafetyNetInterval() : settings.getProtectInterval();
+
+        task = plugin.getScheduler().runTaskTimerAsynchronously(this, 0, 1);
     }
 
     /**
-     * Runs the player security check.
+     * Gets how long a verification may be trusted without looking at the storage again.
+     * Another server sharing the database can change the stored IPs without a local write,
+     * so a verification is trusted no longer than the storage cache trusts the stored IPs.
+     *
+     * @param plugin The {@link IPSecurityPlugin} instance.
+     * @return The maximum age in nanoseconds, {@link Long#MAX_VALUE} if only local writes can change the stored IPs.
+     */
+    private static long getVerificationMaximumAge(IPSecurityPlugin plugin) {
+        Settings settings = plugin.getSettings();
+
+        if (settings.isStorageCacheEnable()) {
+            long expireAfter = settings.getStorageCacheExpireAfter();
+            return expireAfter > 0 ? TimeUnit.SECONDS.toNanos(expireAfter) : Long.MAX_VALUE;
+        }
+
+        // Without a cache every lookup is fresh, which only matters for a database other servers write to
+        return plugin.getBackendStorage() instanceof MySQLStorage ? 0 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs one slice of the player security check.
      */
     @Override
-    public void run() {
-        for (Player player: Bukkit.getOnlinePlayers()) {
-            if (!isValidPlayer(player)) {
-                handleInvalidPlayer(player);
+    public synchronized void run() {
+        if (sweepTick == 0) {
+            // Players joining mid-cycle are checked on join and picked up by the next cycle
+            sweepQueue.clear();
+            sweepQueue.addAll(Bukkit.getOnlinePlayers());
+            sweepPlayers = sweepQueue.size();
+            sweepMaxSliceNanos = 0;
+            sweepBusyNanos = 0;
+        }
+
+        long start = System.nanoTime();
+
+        int ticksLeft = interval - sweepTick;
+        int sliceSize = (sweepQueue.size() + ticksLeft - 1) / ticksLeft;
+
+        List<Player> slice = new ArrayList<>(sliceSize);
+        while (slice.size() < sliceSize && !sweepQueue.isEmpty()) {
+            Player player = sweepQueue.poll();
+            // Players who left mid-cycle are skipped
+            if (player.isOnline()) {
+                slice.add(player);
             }
         }
-    }
 
+        dispatch(slice);
+        lookupCandidates();
+
+        lastSliceNanos = System.nanoTime() - start;
+        sweepMaxSliceNanos = Math.max(sweepMaxSliceNanos, lastSliceNanos);
+        sweepBusyNanos += lastSliceNanos;
+
+        PluginMetrics metrics = plugin.getMetrics();
+        metrics.getSweepSliceLatency().record(lastSliceNanos);
+        metrics.getPlayersChecked().add(slice.size());
+
+        if (++sweepTick >= interval) {
+            sweepTick = 0;
+            lastSweepMaxSliceNanos = sweepMaxSliceNanos;
+            metrics.getSweepLatency().record(sweepBusyNanos);
+            PluginLogger.debug(String.format("Checked %d players over %d ticks, slowest slice took %.3f ms",
+                    sweepPlayers, interval, sweepMaxSliceNanos / 1_000_000D));
+        }
+    }
 
     /**
-     * Checks if the player is valid based on security settings.
+     * Checks the privileges of the given players, each on the thread allowed to read their state,
+     * and reports the ones that need a lookup to the {@link SweepAggregator}.
      *
-     * @param player The {@link Player} to check.
-     * @return True if the player is valid, otherwise false.
+     * @param players The players to check.
      */
-    public boolean isValidPlayer(Player player) {
-        return (!settings.isCheckOp() || checkOp(player)) &&
-                (!settings.isCheckGamemode() || checkGamemode(player)) &&
-                checkPermissions(player);
+    void dispatch(Collection<Player> players) {
+        for (Player player : players) {
+            if (!regionized) {
+                collect(player);
+                continue;
+            }
+
+            plugin.getScheduler().runTask(player, () -> {
+                long start = System.nanoTime();
+                collect(player);
+                plugin.getMetrics().recordMainThread(start);
+            });
+        }
     }
 
     /**
-     * Handles an invalid player by kicking them from the server.
+     * Checks the privileges of one player.
+     * Players whose last verification still holds are skipped, see {@link VerificationCache}.
      *
-     * @param player The {@link Player} to handle.
+     * @param player The player to check.
      */
-    public void handleInvalidPlayer(Player player) {
-        TaskUtil.runSync(player, () -> {
-            if (player.isOnline()) {
-                Messages messages = plugin.getMessages();
+    private void collect(Player player) {
+        if (!player.isOnline()) {
+            return;
+        }
 
-                String kickMessage = ChatColor.translateAlternateColorCodes('&', messages.getKickMessage());
-                player.kickPlayer(kickMessage);
+        long fingerprint = getPrivilegeFingerprint(player);
+        if ((fingerprint & PRIVILEGED) == 0) {
+            return;
+        }
 
-                MessageEmbed messageEmbed = messages.getInvalidMessageEmbed(player);
+        // Without an address there is nothing to check yet, e.g. while the connection is being torn down
+        InetSocketAddress address = player.getAddress();
+        if (address == null || address.getAddress() == null) {
+            return;
+        }
 
-                if (settings.isAddIPButtonEnable()) {
+        if (verificationCache.isVerified(player.getName(), address.getAddress(), fingerprint)) {
+            plugin.getMetrics().getPlayersSkipped().increment();
+            return;
+        }
 
-                    ButtonData buttonData = new ButtonData(UUID.randomUUID(), player.getName(), getStringIPAddress(player));
+        aggregator.add(player, address.getAddress(), fingerprint);
+    }
 
-                    Button button = Button.success(buttonData.getButtonUUID().toString(), settings.getAddIPButtonText());
+    /**
+     * Checks everything reported to the {@link SweepAggregator} so far against one batch storage lookup.
+     * On Folia this includes players of earlier slices whose region only reported after that slice.
+     */
+    void lookupCandidates() {
+        List<SweepAggregator.Candidate> candidates = aggregator.drain();
+        if (candidates.isEmpty()) {
+            return;
+        }
 
-                    MessageCreateData data = new MessageCreateBuilder()
-                            .addEmbeds(messageEmbed)
-                            .setActionRow(button)
-                            .build();
+        // Read before the stored IPs, so a write during the lookup makes the results stale
+        long storageVersion = verificationCache.getStorageVersion();
 
-                    bot.sendNotification(data);
+        List<String> playerNames = new ArrayList<>(candidates.size());
+        for (SweepAggregator.Candidate candidate : candidates) {
+            playerNames.add(candidate.getPlayer().getName());
+        }
+
+        plugin.getDataStorage().getPlayerIPs(playerNames).thenAccept(ips -> {
+            for (SweepAggregator.Candidate candidate : candidates) {
+                Player player = candidate.getPlayer();
 
-                    bot.getListener().registerButtonListener(buttonData);
+                // One failing player must not stop the rest of the batch from being checked
+                try {
+                    if (!player.isOnline()) {
+                        continue;
+                    }
 
-                } else {
-                    bot.sendNotification(messageEmbed);
+                    String storedIP = ips.get(player.getName());
+                    if (storedIP != null && IPAllowlist.of(storedIP).contains(candidate.getAddress())) {
+                        verificationCache.markVerified(player.getName(), candidate.getAddress(), candidate.getFingerprint(), storageVersion);
+                    } else {
+                        handleInvalidPlayer(player);
+                    }
+                } catch (RuntimeException e) {
+                    PluginLogger.severe("An error occurred while checking " + player.getName() + ": " + e.getMessage());
                 }
+            }
+        }).exceptionally(throwable -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
 
+            // The storage is overloaded or shutting down, so the players are looked up with the next slice
+            if (cause instanceof RejectedExecutionException) {
+                PluginLogger.debug("Storage rejected the lookup of " + candidates.size() + " players: " + cause.getMessage());
+                aggregator.requeue(candidates);
+                return null;
             }
+
+            PluginLogger.severe("An error occurred while checking players: " + cause.getMessage());
+            cause.printStackTrace();
+            return null;
         });
     }
 
+
     /**
-     * Checks if the player has op permissions and if their IP matches.
+     * Checks if the player is valid based on security settings.
      *
      * @param player The {@link Player} to check.
-     * @return True if the player passes the check, otherwise false.
+     * @return True if the player is valid, otherwise false.
      */
-    private boolean checkOp(Player player) {
-        if (!player.isOp()) {
-            return true;
-        }
-        String ip = plugin.getDataStorage().getPlayerIP(player.getName()).join();
-        return getStringIPAddress(player).equals(ip);
+    public boolean isValidPlayer(Player player) {
+        return validate(player).isValid();
     }
 
     /**
-     * Checks if the player's gamemode is creative and if their IP matches.
+     * Evaluates the player against the protection rules, reading their stored IP at most once.
+     * The storage is only queried when the player is privileged.
      *
      * @param player The {@link Player} to check.
-     * @return True if the player passes the check, otherwise false.
+     * @return The {@link ValidationResult} of the player.
      */
-    private boolean checkGamemode(Player player) {
-        if (!player.getGameMode().equals(GameMode.CREATIVE)) {
-            return true;
+    public ValidationResult validate(Player player) {
+        if (!isShouldValidate(player)) {
+            return ValidationResult.NOT_REQUIRED;
         }
+
         String ip = plugin.getDataStorage().getPlayerIP(player.getName()).join();
-        return getStringIPAddress(player).equals(ip);
+        return isMatchingIP(player, ip) ? ValidationResult.VALID : ValidationResult.INVALID;
     }
 
     /**
-     * Checks if the player has any specified permissions and if their IP matches.
+     * Evaluates the player against the protection rules using an already fetched stored IP.
      *
-     * @param player The {@link Player} to check.
-     * @return True if the player passes the check, otherwise false.
+     * @param player   The {@link Player} to check.
+     * @param storedIP The IP stored for the player, may be null.
+     * @return The {@link ValidationResult} of the player.
+     */
+    public ValidationResult validate(Player player, String storedIP) {
+        if (!isShouldValidate(player)) {
+            return ValidationResult.NOT_REQUIRED;
+        }
+
+        return isMatchingIP(player, storedIP) ? ValidationResult.VALID : ValidationResult.INVALID;
+    }
+
+    /**
+     * Revalidates a single player right away.
+     * The player's state is read on the thread owning the player, which is their region on Folia,
+     * and only the storage lookup runs asynchronously.
+     * Repeated calls for the same player are coalesced until the pending check has run.
+     *
+     * @param player The {@link Player} to revalidate.
+     */
+    public void revalidate(Player player) {
+        if (!pendingRevalidations.add(player.getUniqueId())) {
+            return;
+        }
+
+        plugin.getScheduler().runTask(player, () -> {
+            pendingRevalidations.remove(player.getUniqueId());
+
+            long start = System.nanoTime();
+            boolean shouldValidate = player.isOnline() && isShouldValidate(player);
+            InetSocketAddress address = player.getAddress();
+            plugin.getMetrics().recordMainThread(start);
+
+            if (!shouldValidate || address == null || address.getAddress() == null) {
+                return;
+            }
+
+            String playerName = player.getName();
+            plugin.getDataStorage().getPlayerIP(playerName).thenAccept(storedIP -> {
+                if (player.isOnline() && (storedIP == null || !IPAllowlist.of(storedIP).contains(address.getAddress()))) {
+                    handleInvalidPlayer(player);
+                }
+            }).exceptionally(throwable -> {
+                PluginLogger.severe("An error occurred while revalidating " + playerName + ": " + throwable.getMessage());
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Handles an invalid player by kicking them from the server.
+     *
+     * @param player The {@link Player} to handle.
+     */
+    public void handleInvalidPlayer(Player player) {
+        TaskUtil.runSync(player, () -> {
+            long start = System.nanoTime();
+
+            if (player.isOnline()) {
+                Messages messages = plugin.getMessages();
+
+                // Read the address before kicking, it is no longer available afterwards
+                MessageEmbed messageEmbed = messages.getInvalidMessageEmbed(player);
+                String ip = getStringIPAddress(player);
+
+                String kickMessage = ChatColor.translateAlternateColorCodes('&', messages.getKickMessage());
+                player.kickPlayer(kickMessage);
+                plugin.getMetrics().getCheckKicks().increment();
+
+                sendInvalidNotification(messageEmbed, player.getName(), ip);
+            }
+
+            plugin.getMetrics().recordMainThread(start);
+        });
+    }
+
+    /**
+     * Sends the verification failed notification, with the add IP button if it is enabled.
+     *
+     * @param messageEmbed The verification failed embed.
+     * @param playerName   The name of the player.
+     * @param ip           The IP the player connected from.
      */
-    private boolean checkPermissions(Player player) {
-        for (String perm : settings.getCheckPermissions()) {
-            if (player.hasPermission(perm)) {
-                String ip = plugin.getDataStorage().getPlayerIP(player.getName()).join();
-                return getStringIPAddress(player).equals(ip);
+    public void sendInvalidNotification(MessageEmbed messageEmbed, String playerName, String ip) {
+        String key = "invalid:" + playerName + ":" + ip;
+
+        Button button = null;
+
+        // Webhook mode has no buttons, and nothing that could handle a click
+        if (settings.isAddIPButtonEnable() && bot.getButtonCodec() != null) {
+            try {
+                // The button carries the signed player and IP itself, so nothing is kept server-side
+                button = Button.success(bot.getButtonCodec().encode(playerName, ip), settings.getAddIPButtonText());
+            } catch (IllegalArgumentException e) {
+                PluginLogger.warning("Unable to create the add IP button for " + playerName + ": " + e.getMessage());
             }
         }
-        return true;
+
+        bot.sendNotification(messageEmbed, button, playerName, key);
+    }
+
+    /**
+     * Checks if the player's connecting IP is allowed by the stored allowlist.
+     *
+     * @param player   The {@link Player} to check.
+     * @param storedIP The allowlist stored for the player, may be null.
+     * @return True if the IP is allowed, otherwise false.
+     */
+    private boolean isMatchingIP(Player player, String storedIP) {
+        return storedIP != null && IPAllowlist.of(storedIP).contains(getIPAddress(player));
+    }
+
+    /**
+     * Computes the privilege fingerprint of a player: whether they have to be validated, the op bit,
+     * the gamemode and which of the checked permissions they have.
+     * The permissions come from the {@link PermissionCache}, so this is a few bit tests for most players.
+     *
+     * @param player The {@link Player} to fingerprint.
+     * @return The fingerprint, with {@link #PRIVILEGED} set if the player has to be validated.
+     */
+    public long getPrivilegeFingerprint(Player player) {
+        boolean op = player.isOp();
+        GameMode gameMode = player.getGameMode();
+
+        long fingerprint = (op ? 2 : 0) | (long) (gameMode.ordinal() & 3) << 2;
+        boolean privileged = settings.isCheckOp() && op || settings.isCheckGamemode() && gameMode == GameMode.CREATIVE;
+
+        long matched = 0;
+        for (long word : permissionCache.getMatched(player)) {
+            matched |= word;
+        }
+
+        if (matched != 0) {
+            // Only whether any permission matched decides the result, so folding long lists is harmless
+            fingerprint |= ((matched | matched >>> 60) & ((1L << 60) - 1)) << 4;
+            privileged = true;
+        }
+
+        return privileged ? fingerprint | PRIVILEGED : fingerprint;
     }
 
     /**
      * Check if player should be validated.
+     * The checked permissions are read again and stored in the {@link PermissionCache},
+     * since this runs when the player joins or their privileges may have changed.
      *
      * @param player The {@link Player} need check.
      * @return true if the player needs to be validated, false otherwise.
@@ -172,27 +462,33 @@ public class PlayerSecurityChecker implements Runnable {
             return true;
         }
 
-        for (String perm: settings.getCheckPermissions()) {
-            if (player.hasPermission(perm)) {
-                return true;
-            }
-        }
-
-        return false;
+        return PermissionCache.isAnySet(permissionCache.refresh(player));
     }
 
     /**
      * Get string IP address of player
      *
      * @param player The player gets IP address.
-     * @return The IP address as string
+     * @return The IP address as string, in canonical form
      * @throws NullPointerException if player is null or unable to retrieve player ip address.
      */
     private String getStringIPAddress(Player player) {
-        return Objects.requireNonNull(
-                player.getAddress(),
-                "Unable to get " + player.getName() + "'s IP address"
-        ).getHostString();
+        return IPAddressParser.format(getIPAddress(player));
+    }
+
+    /**
+     * Get IP address of player
+     *
+     * @param player The player gets IP address.
+     * @return The IP address
+     * @throws NullPointerException if player is null or unable to retrieve player ip address.
+     */
+    private InetAddress getIPAddress(Player player) {
+        InetSocketAddress address = player.getAddress();
+        if (address == null || address.getAddress() == null) {
+            throw new NullPointerException("Unable to get " + player.getName() + "'s IP address");
+        }
+        return address.getAddress();
     }
 
     /**
@@ -0,0 +1,80 @@
+package dev.khanh.ipsecurity.task;
+
+import lombok.Getter;
+import org.bukkit.entity.Player;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the players the periodic sweep has to look up, from whichever thread read their state.
+ * On Folia each player is checked on the region that owns them, so the regions report here in parallel
+ * and the sweep drains everything reported so far into one batch storage lookup.
+ *
+ * @author KhanhHuynh1402
+ */
+public class SweepAggregator {
+    private final Queue<Candidate> candidates = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Reports a privileged player whose last verification no longer holds.
+     *
+     * @param player      The player
+     * @param address     The address the player is connected from
+     * @param fingerprint The privilege fingerprint the player was checked with
+     */
+    public void add(Player player, InetAddress address, long fingerprint) {
+        candidates.add(new Candidate(player, address, fingerprint));
+    }
+
+    /**
+     * Reports drained players again, for a lookup that could not run.
+     *
+     * @param drained Players returned by {@link #drain()}
+     */
+    public void requeue(List<Candidate> drained) {
+        candidates.addAll(drained);
+    }
+
+    /**
+     * Removes and returns everything reported so far.
+     *
+     * @return The reported players, in the order they were reported
+     */
+    public List<Candidate> drain() {
+        List<Candidate> drained = new ArrayList<>();
+
+        Candidate candidate;
+        while ((candidate = candidates.poll()) != null) {
+            drained.add(candidate);
+        }
+
+        return drained;
+    }
+
+    /**
+     * @return The number of players waiting for the next lookup
+     */
+    public int size() {
+        return candidates.size();
+    }
+
+    /**
+     * A player reported by {@link #add(Player, InetAddress, long)}.
+     */
+    @Getter
+    public static final class Candidate {
+        private final Player player;
+        private final InetAddress address;
+        private final long fingerprint;
+
+        private Candidate(Player player, InetAddress address, long fingerprint) {
+            this.player = player;
+            this.address = address;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package dev.khanh.ipsecurity.task;
+
+/**
+ * Outcome of evaluating a player against the protection rules.
+ *
+ * @author KhanhHuynh1402
+ */
+public enum ValidationResult {
+    /**
+     * The player matches none of the protected rules, so their IP is not checked.
+     */
+    NOT_REQUIRED,
+
+    /**
+     * The player is privileged and connects from their stored IP.
+     */
+    VALID,
+
+    /**
+     * The player is privileged but does not connect from their stored IP.
+     */
+    INVALID;
+
+    /**
+     * @return true unless the player failed the check
+     */
+    public boolean isValid() {
+        return this != INVALID;
+    }
+}
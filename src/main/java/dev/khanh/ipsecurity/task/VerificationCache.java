@@ -0,0 +1,108 @@
+package dev.khanh.ipsecurity.task;
+
+import dev.khanh.ipsecurity.data.VersionedDataStorage;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, per online player, what their last successful verification was based on:
+ * the address, the privilege fingerprint and the storage version. While none of these
+ * change the verification would come out the same, so the sweep can skip the player.
+ * <p>
+ * A record is dropped when the player quits or a write for their name goes to the storage.
+ * Any other write changes the storage version, which also makes every record stale once.
+ * Writes from another server sharing the database are not seen, so records also expire after a maximum age.
+ *
+ * @author KhanhHuynh1402
+ */
+public class VerificationCache {
+    private final VersionedDataStorage storage;
+    private final long maximumAgeNanos;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new VerificationCache.
+     *
+     * @param storage         The {@link VersionedDataStorage} the verifications are read from
+     * @param maximumAgeNanos Nanoseconds a record is trusted, {@link Long#MAX_VALUE} to trust it until invalidated
+     */
+    public VerificationCache(VersionedDataStorage storage, long maximumAgeNanos) {
+        this.storage = storage;
+        this.maximumAgeNanos = maximumAgeNanos;
+        storage.addWriteListener(this::invalidate);
+    }
+
+    /**
+     * @return The storage version to pass to {@link #markVerified}, read before the stored IPs are
+     */
+    public long getStorageVersion() {
+        return storage.getVersion();
+    }
+
+    /**
+     * Checks whether the player was verified with the same address, privileges and stored IPs.
+     *
+     * @param playerName  The name of the player
+     * @param address     The address the player is connected from
+     * @param fingerprint The current privilege fingerprint
+     * @return true if the last verification still holds
+     */
+    public boolean isVerified(String playerName, InetAddress address, long fingerprint) {
+        Record record = records.get(playerName);
+        return record != null
+                && record.fingerprint == fingerprint
+                && record.storageVersion == storage.getVersion()
+                && System.nanoTime() - record.verifiedAt < maximumAgeNanos
+                && record.address.equals(address);
+    }
+
+    /**
+     * Records a successful verification.
+     * It is ignored if the storage was written to after the stored IPs were read.
+     *
+     * @param playerName     The name of the player
+     * @param address        The address the player is connected from
+     * @param fingerprint    The privilege fingerprint the player was checked with
+     * @param storageVersion The storage version read before the stored IPs
+     */
+    public void markVerified(String playerName, InetAddress address, long fingerprint, long storageVersion) {
+        if (maximumAgeNanos <= 0 || storageVersion != storage.getVersion()) {
+            return;
+        }
+
+        // A write racing with this put leaves a record with an old version, which isVerified never accepts
+        records.put(playerName, new Record(address, fingerprint, storageVersion, System.nanoTime()));
+    }
+
+    /**
+     * Drops the record of a player.
+     *
+     * @param playerName The name of the player
+     */
+    public void invalidate(String playerName) {
+        records.remove(playerName);
+    }
+
+    /**
+     * @return The number of players with a record
+     */
+    public int size() {
+        return records.size();
+    }
+
+    private static final class Record {
+        private final InetAddress address;
+        private final long fingerprint;
+        private final long storageVersion;
+        private final long verifiedAt;
+
+        private Record(InetAddress address, long fingerprint, long storageVersion, long verifiedAt) {
+            this.address = address;
+            this.fingerprint = fingerprint;
+            this.storageVersion = storageVersion;
+            this.verifiedAt = verifiedAt;
+        }
+    }
+}
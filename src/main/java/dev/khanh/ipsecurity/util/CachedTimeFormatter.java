@@ -0,0 +1,67 @@
+package dev.khanh.ipsecurity.util;
+
+import lombok.Getter;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe clock formatter that formats the current time at most once per resolution step.
+ * Every caller within the same step gets the same cached string.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class CachedTimeFormatter {
+    @Getter
+    private final DateTimeFormatter formatter;
+    @Getter
+    private final long resolutionMillis;
+    private volatile CachedTime cached = new CachedTime(Long.MIN_VALUE, null);
+
+    /**
+     * Constructs a new CachedTimeFormatter.
+     *
+     * @param pattern           The {@link DateTimeFormatter} pattern
+     * @param zoneId            The time zone the time is shown in
+     * @param resolutionSeconds How long a formatted value is reused, in seconds
+     * @throws IllegalArgumentException If the pattern is invalid
+     * @throws DateTimeException        If the pattern uses a field an instant cannot be formatted with
+     */
+    public CachedTimeFormatter(String pattern, ZoneId zoneId, long resolutionSeconds) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(zoneId);
+        this.resolutionMillis = TimeUnit.SECONDS.toMillis(Math.max(1, resolutionSeconds));
+
+        // Some valid patterns only fail when formatting, so fail here rather than on every notification
+        formatter.format(Instant.now());
+    }
+
+    /**
+     * @return The current time, formatted
+     */
+    public String format() {
+        long step = System.currentTimeMillis() / resolutionMillis;
+        CachedTime current = cached;
+
+        if (current.step == step) {
+            return current.text;
+        }
+
+        // Racing threads may format the same step twice, which is harmless
+        String text = formatter.format(Instant.ofEpochMilli(step * resolutionMillis));
+        cached = new CachedTime(step, text);
+        return text;
+    }
+
+    private static final class CachedTime {
+        private final long step;
+        private final String text;
+
+        private CachedTime(long step, String text) {
+            this.step = step;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.khanh.ipsecurity.util;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+/**
+ * A {@link MessageEmbed} with its title, description, author name and footer compiled into
+ * {@link PlaceholderTemplate}s at load time.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class EmbedTemplate {
+    private final MessageEmbed embed;
+    private final PlaceholderTemplate title;
+    private final PlaceholderTemplate description;
+    private final PlaceholderTemplate authorName;
+    private final PlaceholderTemplate footer;
+    private final boolean constant;
+
+    private EmbedTemplate(MessageEmbed embed) {
+        this.embed = embed;
+        this.title = compile(embed.getTitle());
+        this.description = compile(embed.getDescription());
+        this.authorName = embed.getAuthor() != null ? compile(embed.getAuthor().getName()) : null;
+        this.footer = embed.getFooter() != null ? compile(embed.getFooter().getText()) : null;
+        this.constant = isConstant(title) && isConstant(description) && isConstant(authorName) && isConstant(footer);
+    }
+
+    /**
+     * Compiles the placeholders of an embed.
+     *
+     * @param embed The embed
+     * @return The compiled template
+     */
+    public static EmbedTemplate compile(MessageEmbed embed) {
+        return new EmbedTemplate(embed);
+    }
+
+    /**
+     * Renders the embed with the given placeholder values.
+     *
+     * @param placeholders The placeholder values
+     * @return The rendered embed
+     */
+    public MessageEmbed render(Placeholders placeholders) {
+        if (constant) {
+            return embed;
+        }
+
+        EmbedBuilder builder = new EmbedBuilder(embed);
+
+        if (title != null) {
+            builder.setTitle(title.render(placeholders), embed.getUrl());
+        }
+
+        if (description != null) {
+            builder.setDescription(description.render(placeholders));
+        }
+
+        MessageEmbed.AuthorInfo authorInfo = embed.getAuthor();
+        if (authorName != null) {
+            builder.setAuthor(authorName.render(placeholders), authorInfo.getUrl(), authorInfo.getIconUrl());
+        }
+
+        if (footer != null) {
+            builder.setFooter(footer.render(placeholders), embed.getFooter().getIconUrl());
+        }
+
+        return builder.build();
+    }
+
+    private static PlaceholderTemplate compile(String text) {
+        return text != null ? PlaceholderTemplate.compile(text) : null;
+    }
+
+    private static boolean isConstant(PlaceholderTemplate template) {
+        return template == null || template.isConstant();
+    }
+}
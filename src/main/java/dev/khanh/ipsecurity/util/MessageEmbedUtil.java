@@ -1,18 +1,14 @@
 package dev.khanh.ipsecurity.util;
 
 import dev.khanh.ipsecurity.IPSecurityPlugin;
-import dev.khanh.ipsecurity.file.Settings;
-import net.dv8tion.jda.api.EmbedBuilder;
+import dev.khanh.ipsecurity.ip.IPAddressParser;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import org.bukkit.entity.Player;
 
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Utility class for parsing placeholders in MessageEmbeds.
+ * Embeds loaded from messages.yml are compiled into {@link EmbedTemplate}s once, these methods
+ * compile on every call and are meant for embeds that are not known ahead of time.
  *
  * @author KhanhHuynh1402
  */
@@ -25,11 +21,7 @@ public class MessageEmbedUtil {
      * @return The MessageEmbed with placeholders replaced.
      */
     public static MessageEmbed parsePlaceholder(MessageEmbed origin, Player player) {
-        return parsePlaceholder(
-                origin,
-                player.getName(),
-                player.getAddress() == null ? "N/a" : player.getAddress().getAddress().getHostAddress()
-        );
+        return EmbedTemplate.compile(origin).render(placeholdersOf(player));
     }
 
     /**
@@ -40,11 +32,7 @@ public class MessageEmbedUtil {
      * @return The MessageEmbed with placeholders replaced.
      */
     public static MessageEmbed parsePlaceholder(MessageEmbed origin, String playerName) {
-        Map<String, String> placeholders = new HashMap<>();
-        placeholders.put("%player%", playerName);
-        placeholders.put("%time%", getCurrentTime());
-
-        return parsePlaceholder(origin, placeholders);
+        return EmbedTemplate.compile(origin).render(Placeholders.of(playerName));
     }
 
     /**
@@ -56,12 +44,7 @@ public class MessageEmbedUtil {
      * @return The MessageEmbed with placeholders replaced.
      */
     public static MessageEmbed parsePlaceholder(MessageEmbed origin, String playerName, String ip) {
-        Map<String, String> placeholders = new HashMap<>();
-        placeholders.put("%player%", playerName);
-        placeholders.put("%ip%", ip);
-        placeholders.put("%time%", getCurrentTime());
-
-        return parsePlaceholder(origin, placeholders);
+        return EmbedTemplate.compile(origin).render(Placeholders.of(playerName, ip));
     }
 
     /**
@@ -71,48 +54,23 @@ public class MessageEmbedUtil {
      * @return The MessageEmbed with placeholders replaced.
      */
     public static MessageEmbed parseTimePlaceholder(MessageEmbed origin) {
-        return parsePlaceholder(origin, Collections.singletonMap("%time%", getCurrentTime()));
+        return EmbedTemplate.compile(origin).render(Placeholders.time());
     }
 
-    public static MessageEmbed parsePlaceholder(MessageEmbed messageEmbed, Map<String, String> placeholders) {
-        EmbedBuilder builder = new EmbedBuilder(messageEmbed);
-
-        String title = messageEmbed.getTitle();
-        if (title != null) {
-            builder.setTitle(replacePlaceholders(title, placeholders));
-        }
-
-        String description = messageEmbed.getDescription();
-        if (description != null) {
-            builder.setDescription(replacePlaceholders(description, placeholders));
-        }
-
-        MessageEmbed.AuthorInfo authorInfo = messageEmbed.getAuthor();
-        if (authorInfo != null && authorInfo.getName() != null) {
-            builder.setAuthor(
-                    replacePlaceholders(authorInfo.getName(), placeholders),
-                    authorInfo.getUrl(),
-                    authorInfo.getIconUrl()
-            );
-        }
-
-        String footerText = messageEmbed.getFooter() != null ? messageEmbed.getFooter().getText() : null;
-        if (footerText != null) {
-            builder.setFooter(replacePlaceholders(footerText, placeholders));
-        }
-
-        return builder.build();
-    }
-
-    private static String replacePlaceholders(String text, Map<String, String> placeholders) {
-        for (Map.Entry<String, String> entry : placeholders.entrySet()) {
-            text = text.replaceAll(entry.getKey(), entry.getValue());
-        }
-        return text;
+    /**
+     * Binds the player's name and IP address.
+     *
+     * @param player The player.
+     * @return The placeholders of the player.
+     */
+    public static Placeholders placeholdersOf(Player player) {
+        return Placeholders.of(
+                player.getName(),
+                player.getAddress() == null ? "N/a" : IPAddressParser.format(player.getAddress().getAddress())
+        );
     }
 
-    private static String getCurrentTime() {
-        Settings settings = IPSecurityPlugin.getInstance().getSettings();
-        return settings.getDateFormat().format(Calendar.getInstance(settings.getTimeZone()).getTime());
+    static String getCurrentTime() {
+        return IPSecurityPlugin.getInstance().getSettings().getTimeFormatter().format();
     }
 }
@@ -0,0 +1,121 @@
+package dev.khanh.ipsecurity.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A text compiled once into literal segments and placeholder slots, so rendering is
+ * a single pass into a presized {@link StringBuilder} with no regex or map lookups.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class PlaceholderTemplate {
+    /**
+     * Supported placeholders.
+     */
+    public enum Slot {
+        PLAYER("%player%"),
+        IP("%ip%"),
+        TIME("%time%");
+
+        private final String token;
+
+        Slot(String token) {
+            this.token = token;
+        }
+    }
+
+    private static final Slot[] SLOTS = Slot.values();
+    /**
+     * Expected length of a rendered placeholder, used to presize the output.
+     */
+    private static final int SLOT_LENGTH_HINT = 20;
+
+    private final String text;
+    private final String[] literals;
+    private final Slot[] slots;
+    private final int literalLength;
+
+    private PlaceholderTemplate(String text, String[] literals, Slot[] slots) {
+        this.text = text;
+        this.literals = literals;
+        this.slots = slots;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles a text into a template.
+     *
+     * @param text The text containing placeholders
+     * @return The compiled template
+     */
+    public static PlaceholderTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+
+        int start = 0;
+        int index = text.indexOf('%');
+
+        while (index >= 0) {
+            Slot slot = matchSlot(text, index);
+
+            if (slot == null) {
+                index = text.indexOf('%', index + 1);
+                continue;
+            }
+
+            literals.add(text.substring(start, index));
+            slots.add(slot);
+            start = index + slot.token.length();
+            index = text.indexOf('%', start);
+        }
+
+        literals.add(text.substring(start));
+
+        return new PlaceholderTemplate(text, literals.toArray(new String[0]), slots.toArray(new Slot[0]));
+    }
+
+    /**
+     * @return true if the template has no placeholders
+     */
+    public boolean isConstant() {
+        return slots.length == 0;
+    }
+
+    /**
+     * Renders the template. Unbound placeholders are kept as written.
+     *
+     * @param placeholders The placeholder values
+     * @return The rendered text
+     */
+    public String render(Placeholders placeholders) {
+        if (slots.length == 0) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(literalLength + slots.length * SLOT_LENGTH_HINT);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(literals[i]);
+
+            String value = placeholders.get(slots[i]);
+            builder.append(value != null ? value : slots[i].token);
+        }
+        builder.append(literals[slots.length]);
+
+        return builder.toString();
+    }
+
+    private static Slot matchSlot(String text, int index) {
+        for (Slot slot : SLOTS) {
+            if (text.startsWith(slot.token, index)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+}
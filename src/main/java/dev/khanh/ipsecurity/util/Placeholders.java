@@ -0,0 +1,67 @@
+package dev.khanh.ipsecurity.util;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Fixed set of placeholder values bound when rendering a {@link PlaceholderTemplate}.
+ * The time is only formatted if a template actually uses it.
+ *
+ * @author KhanhHuynh1402
+ */
+public final class Placeholders {
+    private final String player;
+    private final String ip;
+    private String time;
+
+    private Placeholders(@Nullable String player, @Nullable String ip) {
+        this.player = player;
+        this.ip = ip;
+    }
+
+    /**
+     * @return Placeholders binding only %time%
+     */
+    public static Placeholders time() {
+        return new Placeholders(null, null);
+    }
+
+    /**
+     * @param player The player name
+     * @return Placeholders binding %player% and %time%
+     */
+    public static Placeholders of(@Nullable String player) {
+        return new Placeholders(player, null);
+    }
+
+    /**
+     * @param player The player name
+     * @param ip     The IP address
+     * @return Placeholders binding %player%, %ip% and %time%
+     */
+    public static Placeholders of(@Nullable String player, @Nullable String ip) {
+        return new Placeholders(player, ip);
+    }
+
+    /**
+     * Gets the value of a slot.
+     *
+     * @param slot The slot
+     * @return The value, or null if it is not bound
+     */
+    @Nullable
+    String get(PlaceholderTemplate.Slot slot) {
+        switch (slot) {
+            case PLAYER:
+                return player;
+            case IP:
+                return ip;
+            case TIME:
+                if (time == null) {
+                    time = MessageEmbedUtil.getCurrentTime();
+                }
+                return time;
+            default:
+                return null;
+        }
+    }
+}